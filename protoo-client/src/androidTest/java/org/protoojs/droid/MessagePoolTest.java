@@ -0,0 +1,136 @@
+package org.protoojs.droid;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class MessagePoolTest {
+
+  private static final String METHOD_TEST = "test";
+  private static final long ERROR_CODE_TEST = 1;
+  private static final String ERROR_REASON_TEST = "test error code";
+
+  @Test
+  public void recycleNotification() {
+    MessagePool pool = new MessagePool();
+    String raw = Message.createNotification(METHOD_TEST, null).toString();
+
+    Message first = Message.parse(raw, pool);
+    assertTrue(first instanceof Message.Notification);
+    assertEquals(METHOD_TEST, ((Message.Notification) first).getMethod());
+    first.release();
+
+    // released instance is reused.
+    Message second = Message.parse(raw, pool);
+    assertSame(first, second);
+
+    // in use instance is not.
+    Message third = Message.parse(raw, pool);
+    assertNotSame(second, third);
+  }
+
+  @Test
+  public void requestNotPooled() {
+    MessagePool pool = new MessagePool();
+    JSONObject request = Message.createRequest(METHOD_TEST, null);
+
+    Message first = Message.parse(request.toString(), pool);
+    first.release();
+    Message second = Message.parse(request.toString(), pool);
+    assertNotSame(first, second);
+  }
+
+  @Test
+  public void recycleResponse() {
+    MessagePool pool = new MessagePool();
+    Message.Request request =
+        (Message.Request) Message.parse(Message.createRequest(METHOD_TEST, null).toString());
+    String success = Message.createSuccessResponse(request, null).toString();
+    String error =
+        Message.createErrorResponse(request, ERROR_CODE_TEST, ERROR_REASON_TEST).toString();
+
+    // fresh instance.
+    Message.Response response = (Message.Response) Message.parse(error, pool);
+    assertFalse(response.isOK());
+    assertEquals(ERROR_CODE_TEST, response.getErrorCode());
+    assertEquals(ERROR_REASON_TEST, response.getErrorReason());
+    response.release();
+
+    // recycled error instance reused for a success.
+    response = (Message.Response) Message.parse(success, pool);
+    assertTrue(response.isOK());
+    assertEquals(0, response.getErrorCode());
+    assertNull(response.getErrorReason());
+    response.release();
+
+    // recycled success instance reused for an error.
+    response = (Message.Response) Message.parse(error, pool);
+    assertFalse(response.isOK());
+    assertEquals(request.getId(), response.getId());
+    assertNull(response.getData());
+  }
+
+  @Test
+  public void debugNeverReuses() {
+    MessagePool pool = new MessagePool(16, true);
+    Message.Notification stale =
+        (Message.Notification)
+            Message.parse(Message.createNotification("first", null).toString(), pool);
+    stale.release();
+
+    // the next frame gets a fresh instance, the stale holder still fails.
+    Message.Notification next =
+        (Message.Notification)
+            Message.parse(Message.createNotification("second", null).toString(), pool);
+    assertNotSame(stale, next);
+    try {
+      stale.getMethod();
+      fail("use after release not detected");
+    } catch (IllegalStateException e) {
+      // expected.
+    }
+
+    // a stale release does not drop the new owner's reference.
+    try {
+      stale.release();
+      fail("double release not detected");
+    } catch (IllegalStateException e) {
+      // expected.
+    }
+    assertEquals("second", next.getMethod());
+  }
+
+  @Test
+  public void useAfterRelease() {
+    MessagePool pool = new MessagePool(16, true);
+    Message.Request request =
+        (Message.Request) Message.parse(Message.createRequest(METHOD_TEST, null).toString());
+    Message response =
+        Message.parse(Message.createSuccessResponse(request, null).toString(), pool);
+    response.release();
+
+    try {
+      ((Message.Response) response).getId();
+      fail("use after release not detected");
+    } catch (IllegalStateException e) {
+      // expected.
+    }
+    try {
+      response.release();
+      fail("double release not detected");
+    } catch (IllegalStateException e) {
+      // expected.
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.protoojs.droid;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.protoojs.droid.codec.ProtooPayload;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PayloadCodecTest {
+
+  @ProtooPayload
+  static class Everything {
+    boolean aBoolean;
+    int anInt = 7;
+    long aLong;
+    double aDouble;
+    float aFloat;
+    Boolean boxedBoolean;
+    Integer boxedInt;
+    Long boxedLong;
+    Double boxedDouble;
+    Float boxedFloat;
+    String string;
+    JSONObject object;
+    JSONArray array;
+    Nested nested;
+    List<String> strings;
+    List<Long> longs;
+    List<Float> floats;
+    List<Nested> nestedList;
+    transient int skipped;
+    static int sStatic;
+  }
+
+  @ProtooPayload
+  static class Nested {
+    String name;
+    List<Integer> values;
+  }
+
+  private static Nested nested(String name, Integer... values) {
+    Nested nested = new Nested();
+    nested.name = name;
+    nested.values = Arrays.asList(values);
+    return nested;
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    Everything value = new Everything();
+    value.aBoolean = true;
+    value.anInt = 42;
+    value.aLong = 1L << 40;
+    value.aDouble = 1.5;
+    value.aFloat = 2.5f;
+    value.boxedBoolean = false;
+    value.boxedInt = -3;
+    value.boxedLong = 1L << 41;
+    value.boxedDouble = 0.25;
+    value.boxedFloat = 0.5f;
+    value.string = "text";
+    value.object = new JSONObject().put("key", "value");
+    value.array = new JSONArray().put(1).put("two");
+    value.nested = nested("inner", 1, 2, 3);
+    value.strings = Arrays.asList("a", null, "c");
+    value.longs = Arrays.asList(1L, 1L << 33);
+    value.floats = Arrays.asList(1.5f, null);
+    value.nestedList = Arrays.asList(nested("first"), null, nested("third", 4));
+    value.skipped = 9;
+
+    // go through text like a real message.
+    String text = PayloadCodecTest_Everything_Codec.INSTANCE.encode(value).toString();
+    Everything decoded = PayloadCodecTest_Everything_Codec.INSTANCE.decode(new JSONObject(text));
+
+    assertTrue(decoded.aBoolean);
+    assertEquals(42, decoded.anInt);
+    assertEquals(1L << 40, decoded.aLong);
+    assertEquals(1.5, decoded.aDouble, 0);
+    assertEquals(2.5f, decoded.aFloat, 0);
+    assertEquals(Boolean.FALSE, decoded.boxedBoolean);
+    assertEquals(Integer.valueOf(-3), decoded.boxedInt);
+    assertEquals(Long.valueOf(1L << 41), decoded.boxedLong);
+    assertEquals(0.25, decoded.boxedDouble, 0);
+    assertEquals(0.5f, decoded.boxedFloat, 0);
+    assertEquals("text", decoded.string);
+    assertEquals("value", decoded.object.getString("key"));
+    assertEquals(2, decoded.array.length());
+    assertEquals("inner", decoded.nested.name);
+    assertEquals(Arrays.asList(1, 2, 3), decoded.nested.values);
+    assertEquals(Arrays.asList("a", null, "c"), decoded.strings);
+    assertEquals(Arrays.asList(1L, 1L << 33), decoded.longs);
+    assertEquals(Arrays.asList(1.5f, null), decoded.floats);
+    assertEquals(3, decoded.nestedList.size());
+    assertEquals("first", decoded.nestedList.get(0).name);
+    assertNull(decoded.nestedList.get(1));
+    assertEquals(Arrays.asList(4), decoded.nestedList.get(2).values);
+    assertEquals(0, decoded.skipped);
+  }
+
+  @Test
+  public void absentKeys() throws Exception {
+    Everything decoded = PayloadCodecTest_Everything_Codec.INSTANCE.decode(new JSONObject());
+
+    // fields keep their defaults.
+    assertFalse(decoded.aBoolean);
+    assertEquals(7, decoded.anInt);
+    assertNull(decoded.boxedInt);
+    assertNull(decoded.string);
+    assertNull(decoded.nested);
+    assertNull(decoded.strings);
+
+    // null keys are treated as absent.
+    decoded =
+        PayloadCodecTest_Everything_Codec.INSTANCE.decode(
+            new JSONObject("{\"anInt\":null,\"string\":null,\"nested\":null}"));
+    assertEquals(7, decoded.anInt);
+    assertNull(decoded.string);
+    assertNull(decoded.nested);
+  }
+
+  @Test
+  public void nullFieldsOmitted() throws Exception {
+    JSONObject encoded = PayloadCodecTest_Everything_Codec.INSTANCE.encode(new Everything());
+
+    assertTrue(encoded.has("anInt"));
+    assertFalse(encoded.has("boxedInt"));
+    assertFalse(encoded.has("string"));
+    assertFalse(encoded.has("strings"));
+    assertFalse(encoded.has("skipped"));
+    assertFalse(encoded.has("sStatic"));
+  }
+}
@@ -0,0 +1,333 @@
+package org.protoojs.droid;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.protoojs.droid.transports.AbsWebSocketTransport;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PeerTest {
+
+  /** Records sent messages, the test drives the listener. */
+  static class FakeTransport extends AbsWebSocketTransport {
+
+    final List<JSONObject> mSent = new CopyOnWriteArrayList<>();
+    Listener mListener;
+    boolean mClosed;
+
+    FakeTransport() {
+      super("wss://example.org");
+    }
+
+    @Override
+    public void connect(Listener listener) {
+      mListener = listener;
+    }
+
+    @Override
+    public String sendMessage(JSONObject message) {
+      mSent.add(message);
+      return message.toString();
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public boolean isClosed() {
+      return mClosed;
+    }
+
+    void respond(JSONObject request, JSONObject data) {
+      Message.Request parsed = (Message.Request) Message.parse(request.toString());
+      mListener.onMessage(
+          mListener.parseMessage(Message.createSuccessResponse(parsed, data).toString()));
+    }
+
+    void reject(JSONObject request, long errorCode, String errorReason) {
+      Message.Request parsed = (Message.Request) Message.parse(request.toString());
+      mListener.onMessage(
+          mListener.parseMessage(
+              Message.createErrorResponse(parsed, errorCode, errorReason).toString()));
+    }
+  }
+
+  static class EmptyListener implements Peer.Listener {
+
+    @Override
+    public void onOpen() {}
+
+    @Override
+    public void onFail() {}
+
+    @Override
+    public void onRequest(
+        @NonNull Message.Request request, @NonNull Peer.ServerRequestHandler handler) {}
+
+    @Override
+    public void onNotification(@NonNull Message.Notification notification) {}
+
+    @Override
+    public void onDisconnected() {}
+
+    @Override
+    public void onClose() {}
+  }
+
+  /** Records results of a request. */
+  static class Result implements Peer.ClientRequestHandler {
+
+    final List<String> mResolved = new CopyOnWriteArrayList<>();
+    final List<Long> mRejected = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void resolve(String data) {
+      mResolved.add(data);
+    }
+
+    @Override
+    public void reject(long error, String errorReason) {
+      mRejected.add(error);
+    }
+  }
+
+  @Test
+  public void flushOnOpen() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = new Peer(transport, new EmptyListener());
+    Result result = new Result();
+
+    peer.request("first", new JSONObject(), result);
+    peer.notify("second", new JSONObject());
+    assertTrue(transport.mSent.isEmpty());
+
+    transport.mListener.onOpen();
+    assertEquals(2, transport.mSent.size());
+    assertEquals("first", transport.mSent.get(0).getString("method"));
+    assertEquals("second", transport.mSent.get(1).getString("method"));
+
+    transport.respond(transport.mSent.get(0), new JSONObject().put("ok", 1));
+    assertEquals(1, result.mResolved.size());
+    peer.close();
+  }
+
+  @Test
+  public void rejectQueuedOnFail() {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = new Peer(transport, new EmptyListener());
+    Result result = new Result();
+
+    peer.request("first", new JSONObject(), result);
+    transport.mListener.onFail();
+    assertEquals(1, result.mRejected.size());
+
+    // nothing left to flush.
+    transport.mListener.onOpen();
+    assertTrue(transport.mSent.isEmpty());
+    peer.close();
+  }
+
+  @Test
+  public void rejectQueuedOnClose() {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = new Peer(transport, new EmptyListener());
+    Result result = new Result();
+
+    peer.request("first", new JSONObject(), result);
+    transport.mListener.onClose();
+    assertEquals(1, result.mRejected.size());
+    assertTrue(peer.isClosed());
+  }
+
+  @Test
+  public void noQueueAfterDisconnect() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    Result result = new Result();
+
+    transport.mListener.onDisconnected();
+    peer.request("first", new JSONObject(), result);
+    assertEquals(1, transport.mSent.size());
+
+    // the timeout check runs while reconnecting.
+    peer.getPendingSend(transport.mSent.get(0).getLong("id")).run();
+    assertEquals(Arrays.asList(408L), result.mRejected);
+    peer.close();
+  }
+
+  @Test
+  public void rejectAfterClose() {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    Result result = new Result();
+
+    peer.close();
+    peer.request("late", new JSONObject(), result);
+    peer.notify("late", new JSONObject());
+    assertEquals(Arrays.asList(503L), result.mRejected);
+    assertTrue(transport.mSent.isEmpty());
+  }
+
+  @Test
+  public void rejectOnClosedTransport() {
+    FakeTransport transport = new FakeTransport();
+    transport.mClosed = true;
+    Peer peer = new Peer(transport, new EmptyListener());
+    Result result = new Result();
+
+    assertTrue(peer.isClosed());
+    peer.request("late", new JSONObject(), result);
+    assertEquals(Arrays.asList(503L), result.mRejected);
+    assertTrue(transport.mSent.isEmpty());
+  }
+
+  private static void awaitSent(FakeTransport transport, int count) throws InterruptedException {
+    for (int i = 0; i < 100 && transport.mSent.size() < count; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(count, transport.mSent.size());
+  }
+
+  private static Peer openPeer(FakeTransport transport) {
+    Peer peer = new Peer(transport, new EmptyListener());
+    transport.mListener.onOpen();
+    return peer;
+  }
+
+  @Test
+  public void hedgeFirstResponseWins() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    peer.setRequestPolicy("join", new RequestPolicy(0, 0.5, 50));
+    Result result = new Result();
+
+    peer.request("join", new JSONObject(), result);
+    awaitSent(transport, 2);
+    JSONObject first = transport.mSent.get(0);
+    JSONObject hedged = transport.mSent.get(1);
+    assertNotEquals(first.getLong("id"), hedged.getLong("id"));
+
+    transport.respond(hedged, new JSONObject().put("winner", "hedged"));
+    assertEquals(1, result.mResolved.size());
+    // the losing copy is kept until its late response.
+    assertTrue(peer.getPendingSend(first.getLong("id")).mCancelled);
+
+    transport.respond(first, new JSONObject());
+    assertNull(peer.getPendingSend(first.getLong("id")));
+    assertEquals(1, result.mResolved.size());
+    assertEquals("hedged", new JSONObject(result.mResolved.get(0)).getString("winner"));
+    assertTrue(result.mRejected.isEmpty());
+    peer.close();
+  }
+
+  @Test
+  public void hedgeClockStartsAtFlush() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = new Peer(transport, new EmptyListener());
+    peer.setRequestPolicy("join", new RequestPolicy(0, 0.5, 100));
+
+    peer.request("join", new JSONObject(), new Result());
+    Thread.sleep(300);
+    // queued before open, no hedged copy yet.
+    transport.mListener.onOpen();
+    assertEquals(1, transport.mSent.size());
+
+    awaitSent(transport, 2);
+    peer.close();
+  }
+
+  @Test
+  public void retryOnLocalTimeout() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    peer.setRequestPolicy("join", new RequestPolicy(1, 0, 0));
+    Result result = new Result();
+
+    peer.request("join", new JSONObject(), result);
+    // timeout check fires.
+    peer.getPendingSend(transport.mSent.get(0).getLong("id")).run();
+    assertEquals(2, transport.mSent.size());
+    assertTrue(result.mRejected.isEmpty());
+
+    // retries exhausted.
+    peer.getPendingSend(transport.mSent.get(1).getLong("id")).run();
+    assertEquals(2, transport.mSent.size());
+    assertEquals(Arrays.asList(408L), result.mRejected);
+    peer.close();
+  }
+
+  @Test
+  public void retryLatencyFromOwnSend() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    final List<Long> latencies = new CopyOnWriteArrayList<>();
+    peer.setRequestPolicy(
+        "join",
+        new RequestPolicy(1, 0, 0) {
+          @Override
+          synchronized void recordLatency(long latencyMillis) {
+            latencies.add(latencyMillis);
+          }
+        });
+
+    peer.request("join", new JSONObject(), new Result());
+    Thread.sleep(300);
+    peer.getPendingSend(transport.mSent.get(0).getLong("id")).run();
+    transport.respond(transport.mSent.get(1), new JSONObject());
+
+    // the wait before the retry is not counted.
+    assertEquals(1, latencies.size());
+    assertTrue(latencies.get(0) < 300);
+    peer.close();
+  }
+
+  @Test
+  public void noRetryOnServerTimeout() {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    peer.setRequestPolicy("join", new RequestPolicy(1, 0, 0));
+    Result result = new Result();
+
+    peer.request("join", new JSONObject(), result);
+    transport.reject(transport.mSent.get(0), 408, "server timeout");
+    assertEquals(1, transport.mSent.size());
+    assertEquals(Arrays.asList(408L), result.mRejected);
+    peer.close();
+  }
+
+  @Test
+  public void retryBudget() throws Exception {
+    FakeTransport transport = new FakeTransport();
+    Peer peer = openPeer(transport);
+    RetryBudget budget = new RetryBudget(1, 1);
+    assertTrue(budget.withdraw());
+    peer.setRetryBudget(budget);
+    peer.setRequestPolicy("join", new RequestPolicy(2, 0, 0));
+    Result result = new Result();
+
+    // a plain request refills the budget.
+    peer.request("plain", new JSONObject(), new Result());
+    assertTrue(budget.withdraw());
+
+    // request() itself earns a token, then the exhausted budget blocks the second retry.
+    peer.request("join", new JSONObject(), result);
+    peer.getPendingSend(transport.mSent.get(1).getLong("id")).run();
+    assertEquals(3, transport.mSent.size());
+    peer.getPendingSend(transport.mSent.get(2).getLong("id")).run();
+    assertEquals(3, transport.mSent.size());
+    assertEquals(Arrays.asList(408L), result.mRejected);
+    peer.close();
+  }
+}
@@ -0,0 +1,252 @@
+package org.protoojs.droid;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ServerRequestExecutorTest {
+
+  private static final String METHOD_TEST = "test";
+
+  /** Records what the executor sends back to the server. */
+  private static class Reply implements Peer.ServerRequestHandler {
+
+    final AtomicInteger mCount = new AtomicInteger();
+    final CountDownLatch mDone = new CountDownLatch(1);
+    volatile long mCode;
+    volatile String mReason;
+
+    @Override
+    public void accept(String data) {
+      mCount.incrementAndGet();
+      mDone.countDown();
+    }
+
+    @Override
+    public void reject(long code, String errorReason) {
+      mCode = code;
+      mReason = errorReason;
+      mCount.incrementAndGet();
+      mDone.countDown();
+    }
+  }
+
+  /** Hands every dispatched request to the test. */
+  private static class Dispatched implements Peer.Listener {
+
+    final BlockingQueue<Message.Request> mRequests = new LinkedBlockingQueue<>();
+    final BlockingQueue<Peer.ServerRequestHandler> mHandlers = new LinkedBlockingQueue<>();
+
+    @Override
+    public void onRequest(
+        @NonNull Message.Request request, @NonNull Peer.ServerRequestHandler handler) {
+      mHandlers.add(handler);
+      mRequests.add(request);
+    }
+
+    Message.Request poll(long timeoutMillis) throws InterruptedException {
+      return mRequests.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onOpen() {}
+
+    @Override
+    public void onFail() {}
+
+    @Override
+    public void onNotification(@NonNull Message.Notification notification) {}
+
+    @Override
+    public void onDisconnected() {}
+
+    @Override
+    public void onClose() {}
+  }
+
+  private static Message.Request request(long id) {
+    return new Message.Request(METHOD_TEST, id, null);
+  }
+
+  // A slot is released once the handler returned too, which happens on the worker.
+  private static void awaitRunning(ServerRequestExecutor executor, int count)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && executor.getRunningCount(METHOD_TEST) != count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, executor.getRunningCount(METHOD_TEST));
+  }
+
+  @Test
+  public void methodLimit() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(4, 16, 5000);
+    executor.setMethodConcurrency(METHOD_TEST, 1);
+    Dispatched dispatched = new Dispatched();
+
+    Message.Request first = request(1);
+    Message.Request second = request(2);
+    executor.execute(first, dispatched, new Reply());
+    executor.execute(second, dispatched, new Reply());
+
+    assertSame(first, dispatched.poll(1000));
+    // limit holds while the first one is pending.
+    assertNull(dispatched.poll(200));
+    assertEquals(1, executor.getRunningCount(METHOD_TEST));
+
+    // answering it hands the slot to the next queued one.
+    dispatched.mHandlers.take().accept();
+    assertSame(second, dispatched.poll(1000));
+    assertEquals(1, executor.getRunningCount(METHOD_TEST));
+
+    dispatched.mHandlers.take().accept();
+    awaitRunning(executor, 0);
+    assertEquals(0, executor.getOutstandingCount());
+    executor.close();
+  }
+
+  @Test
+  public void queuedTimeoutKeepsSlot() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(4, 16, 5000);
+    executor.setMethodConcurrency(METHOD_TEST, 1);
+    Dispatched dispatched = new Dispatched();
+
+    Message.Request third = request(3);
+    Reply queuedReply = new Reply();
+    executor.execute(request(1), dispatched, new Reply());
+    executor.execute(request(2), dispatched, queuedReply);
+    executor.execute(third, dispatched, new Reply());
+    dispatched.poll(1000);
+
+    // deadline of the queued request fires.
+    executor.getOutstanding(2).mDeadline.run();
+    assertEquals(1, queuedReply.mCount.get());
+    assertEquals(408, queuedReply.mCode);
+    assertEquals(1, executor.getRunningCount(METHOD_TEST));
+    assertNull(dispatched.poll(200));
+
+    // the timed out request is skipped.
+    dispatched.mHandlers.take().accept();
+    assertSame(third, dispatched.poll(1000));
+    assertEquals(1, executor.getRunningCount(METHOD_TEST));
+
+    dispatched.mHandlers.take().accept();
+    awaitRunning(executor, 0);
+    executor.close();
+  }
+
+  @Test
+  public void deadlineRejectsOnce() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(1, 16, 200);
+    BlockingQueue<Boolean> timedOut = new LinkedBlockingQueue<>();
+    executor.setMetricsListener(
+        (method, queueMillis, handleMillis, wasTimedOut) -> timedOut.add(wasTimedOut));
+    Dispatched dispatched = new Dispatched();
+    Reply reply = new Reply();
+
+    executor.execute(request(1), dispatched, reply);
+    dispatched.poll(1000);
+    assertTrue(reply.mDone.await(2, TimeUnit.SECONDS));
+    assertEquals(408, reply.mCode);
+
+    // a late answer is dropped.
+    dispatched.mHandlers.take().accept();
+    assertEquals(1, reply.mCount.get());
+    assertEquals(Boolean.TRUE, timedOut.poll(1, TimeUnit.SECONDS));
+    assertNull(timedOut.poll(200, TimeUnit.MILLISECONDS));
+    assertEquals(0, executor.getOutstandingCount());
+    executor.close();
+  }
+
+  @Test
+  public void runningHandlerKeepsSlot() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(4, 16, 5000);
+    executor.setMethodConcurrency(METHOD_TEST, 1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    Dispatched dispatched =
+        new Dispatched() {
+          @Override
+          public void onRequest(
+              @NonNull Message.Request request, @NonNull Peer.ServerRequestHandler handler) {
+            super.onRequest(request, handler);
+            if (request.getId() == 1) {
+              // heavy synchronous handler.
+              try {
+                unblock.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+        };
+    Reply reply = new Reply();
+
+    Message.Request second = request(2);
+    executor.execute(request(1), dispatched, reply);
+    executor.execute(second, dispatched, new Reply());
+    try {
+      dispatched.poll(1000);
+      // deadline of the running request fires.
+      executor.getOutstanding(1).mDeadline.run();
+      assertEquals(408, reply.mCode);
+
+      // timed out but still running, the slot stays busy.
+      assertNull(dispatched.poll(200));
+      assertEquals(1, executor.getRunningCount(METHOD_TEST));
+
+      unblock.countDown();
+      assertSame(second, dispatched.poll(1000));
+    } finally {
+      unblock.countDown();
+      executor.close();
+    }
+  }
+
+  @Test
+  public void handlerThrows() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(1, 16, 5000);
+    Reply reply = new Reply();
+
+    executor.execute(
+        request(1),
+        new Dispatched() {
+          @Override
+          public void onRequest(
+              @NonNull Message.Request request, @NonNull Peer.ServerRequestHandler handler) {
+            throw new IllegalStateException("secret");
+          }
+        },
+        reply);
+    assertTrue(reply.mDone.await(2, TimeUnit.SECONDS));
+    assertEquals(500, reply.mCode);
+    assertEquals("internal error", reply.mReason);
+    executor.close();
+  }
+
+  @Test
+  public void tooManyOutstanding() throws Exception {
+    ServerRequestExecutor executor = new ServerRequestExecutor(1, 1, 5000);
+    Dispatched dispatched = new Dispatched();
+    Reply overflow = new Reply();
+
+    executor.execute(request(1), dispatched, new Reply());
+    executor.execute(request(2), dispatched, overflow);
+    assertEquals(1, overflow.mCount.get());
+    assertEquals(503, overflow.mCode);
+    assertEquals(1, executor.getOutstandingCount());
+    executor.close();
+  }
+}
@@ -13,6 +13,10 @@ public class Message {
 
   // message data.
   private JSONObject mData;
+  // Owning pool, null if not obtained from a MessagePool.
+  MessagePool mPool;
+  // Whether the message is back in its pool.
+  boolean mReleased;
 
   public Message() {}
 
@@ -21,9 +25,42 @@ public class Message {
   }
 
   public JSONObject getData() {
+    checkNotReleased();
     return mData;
   }
 
+  // Gives a pooled message back to its pool once dispatch returned, no-op if not pooled.
+  void release() {
+    if (mPool == null) {
+      return;
+    }
+
+    synchronized (this) {
+      if (mReleased) {
+        if (mPool.isDebug()) {
+          throw new IllegalStateException("Message released more than once");
+        }
+        return;
+      }
+      mReleased = true;
+    }
+    mPool.recycle(this);
+  }
+
+  void obtain() {
+    mReleased = false;
+  }
+
+  void reset() {
+    mData = null;
+  }
+
+  void checkNotReleased() {
+    if (mReleased && mPool != null && mPool.isDebug()) {
+      throw new IllegalStateException("Message used after release");
+    }
+  }
+
   public void setData(JSONObject data) {
     mData = data;
   }
@@ -49,6 +86,7 @@ public class Message {
     }
 
     public long getId() {
+      checkNotReleased();
       return mId;
     }
 
@@ -57,6 +95,7 @@ public class Message {
     }
 
     public String getMethod() {
+      checkNotReleased();
       return mMethod;
     }
 
@@ -95,6 +134,7 @@ public class Message {
     }
 
     public long getId() {
+      checkNotReleased();
       return mId;
     }
 
@@ -103,6 +143,7 @@ public class Message {
     }
 
     public boolean isOK() {
+      checkNotReleased();
       return mOK;
     }
 
@@ -111,6 +152,7 @@ public class Message {
     }
 
     public long getErrorCode() {
+      checkNotReleased();
       return mErrorCode;
     }
 
@@ -119,12 +161,22 @@ public class Message {
     }
 
     public String getErrorReason() {
+      checkNotReleased();
       return mErrorReason;
     }
 
     public void setErrorReason(String errorReason) {
       mErrorReason = errorReason;
     }
+
+    @Override
+    void reset() {
+      super.reset();
+      mId = 0;
+      mOK = false;
+      mErrorCode = 0;
+      mErrorReason = null;
+    }
   }
 
   public static class Notification extends Message {
@@ -146,15 +198,30 @@ public class Message {
     }
 
     public String getMethod() {
+      checkNotReleased();
       return mMethod;
     }
 
     public void setMethod(String method) {
       mMethod = method;
     }
+
+    @Override
+    void reset() {
+      super.reset();
+      mMethod = null;
+    }
   }
 
   public static Message parse(String raw) {
+    return parse(raw, null);
+  }
+
+  /**
+   * Like {@link #parse(String)}, taking responses and notifications from {@code pool} if not null.
+   * Requests are never pooled as they outlive dispatch until answered.
+   */
+  public static Message parse(String raw, MessagePool pool) {
     Logger.d(TAG, "parse() ");
     JSONObject object;
     try {
@@ -188,6 +255,20 @@ public class Message {
         return null;
       }
 
+      if (pool != null) {
+        Response response = pool.obtainResponse();
+        response.setId(id);
+        if (object.optBoolean("ok")) {
+          response.setOK(true);
+          response.setData(object.optJSONObject("data"));
+        } else {
+          response.setOK(false);
+          response.setErrorCode(object.optLong("errorCode"));
+          response.setErrorReason(object.optString("errorReason"));
+        }
+        return response;
+      }
+
       if (object.optBoolean("ok")) {
         return new Response(id, object.optJSONObject("data"));
       } else {
@@ -202,6 +283,13 @@ public class Message {
         return null;
       }
 
+      if (pool != null) {
+        Notification notification = pool.obtainNotification();
+        notification.setMethod(method);
+        notification.setData(object.optJSONObject("data"));
+        return notification;
+      }
+
       return new Notification(method, object.optJSONObject("data"));
     } else {
       // Invalid.
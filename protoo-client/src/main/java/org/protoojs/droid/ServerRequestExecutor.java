@@ -0,0 +1,327 @@
+package org.protoojs.droid;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link Peer.Listener#onRequest} for server-initiated requests on a bounded worker pool.
+ *
+ * <p>Every dispatched request is tracked until it is accepted or rejected. A request that is not
+ * answered within the deadline is rejected automatically with a 408 error. Per-method limits cap
+ * how many requests of the same method may be in flight at once; the rest wait in FIFO order. A
+ * request is in flight until it is answered and its handler returned, so a handler still running
+ * past the deadline keeps its slot.
+ *
+ * <p>An executor belongs to a single {@link Peer} and is shut down when that peer is closed.
+ */
+public class ServerRequestExecutor {
+
+  private static final String TAG = "ServerRequestExecutor";
+
+  public interface MetricsListener {
+
+    /**
+     * Called once for every server request that has been answered.
+     *
+     * @param method request method
+     * @param queueMillis time spent waiting for a worker or a method slot
+     * @param handleMillis time from handler invocation until accept/reject
+     * @param timedOut whether the request was rejected automatically by the deadline
+     */
+    void onServerRequestDone(String method, long queueMillis, long handleMillis, boolean timedOut);
+  }
+
+  class Task implements Peer.ServerRequestHandler, Runnable {
+
+    final Message.Request mRequest;
+    final Peer.Listener mListener;
+    final Peer.ServerRequestHandler mServerRequestHandler;
+    final long mQueuedAt;
+    volatile long mStartedAt;
+    final AtomicBoolean mDone = new AtomicBoolean(false);
+    // Handler running on a worker, guarded by the executor.
+    boolean mRunning;
+    // Accepted, rejected or timed out, guarded by the executor.
+    boolean mAnswered;
+    final Runnable mDeadline =
+        new Runnable() {
+          @Override
+          public void run() {
+            if (finish(true)) {
+              Logger.w(TAG, "request() " + mRequest.getMethod() + " not answered, timeout");
+              mServerRequestHandler.reject(408, "request timeout");
+            }
+          }
+        };
+
+    Task(
+        Message.Request request,
+        Peer.Listener listener,
+        Peer.ServerRequestHandler serverRequestHandler) {
+      mRequest = request;
+      mListener = listener;
+      mServerRequestHandler = serverRequestHandler;
+      mQueuedAt = SystemClock.elapsedRealtime();
+      mTimerCheckHandler.postDelayed(mDeadline, mDeadlineMillis);
+    }
+
+    @Override
+    public void run() {
+      if (!startRunning(this)) {
+        return;
+      }
+      mStartedAt = SystemClock.elapsedRealtime();
+      try {
+        mListener.onRequest(mRequest, this);
+      } catch (RuntimeException e) {
+        Logger.e(TAG, "onRequest() " + mRequest.getMethod() + " threw", e);
+        // Exception details stay local.
+        reject(500, "internal error");
+      } finally {
+        stopRunning(this);
+      }
+    }
+
+    @Override
+    public void accept(String data) {
+      if (finish(false)) {
+        mServerRequestHandler.accept(data);
+      }
+    }
+
+    @Override
+    public void reject(long code, String errorReason) {
+      if (finish(false)) {
+        mServerRequestHandler.reject(code, errorReason);
+      }
+    }
+
+    boolean finish(boolean timedOut) {
+      if (!mDone.compareAndSet(false, true)) {
+        return false;
+      }
+      mTimerCheckHandler.removeCallbacks(mDeadline);
+      release(this);
+
+      MetricsListener metricsListener = mMetricsListener;
+      if (metricsListener != null) {
+        long now = SystemClock.elapsedRealtime();
+        long queueMillis = (mStartedAt != 0 ? mStartedAt : now) - mQueuedAt;
+        long handleMillis = mStartedAt != 0 ? now - mStartedAt : 0;
+        metricsListener.onServerRequestDone(
+            mRequest.getMethod(), queueMillis, handleMillis, timedOut);
+      }
+      return true;
+    }
+  }
+
+  // Worker pool running the request handlers.
+  @NonNull private final ThreadPoolExecutor mWorkers;
+  // Handler for deadline check.
+  @NonNull private final Handler mTimerCheckHandler;
+  // Max number of tracked requests, running or queued.
+  private final int mMaxOutstanding;
+  // Deadline after which an unanswered request is rejected.
+  private final long mDeadlineMillis;
+  // Per-method in-flight limits indexed by method.
+  private final Map<String, Integer> mMethodLimits = new HashMap<>();
+  // Number of in-flight requests indexed by method.
+  private final Map<String, Integer> mMethodRunning = new HashMap<>();
+  // Requests waiting for a method slot indexed by method.
+  private final Map<String, Queue<Task>> mMethodQueued = new HashMap<>();
+  // Outstanding request objects indexed by request id.
+  private final Map<Long, Task> mOutstanding = new HashMap<>();
+  // Metrics listener.
+  private volatile MetricsListener mMetricsListener;
+  // Closed flag.
+  private boolean mClosed;
+
+  /**
+   * @param poolSize number of worker threads
+   * @param maxOutstanding max number of requests being handled or waiting; beyond it requests are
+   *     rejected with a 503 error
+   * @param deadlineMillis time after which an unanswered request is rejected with a 408 error
+   */
+  public ServerRequestExecutor(int poolSize, int maxOutstanding, long deadlineMillis) {
+    if (poolSize <= 0 || maxOutstanding <= 0 || deadlineMillis <= 0) {
+      throw new IllegalArgumentException("poolSize, maxOutstanding and deadline must be positive.");
+    }
+
+    mMaxOutstanding = maxOutstanding;
+    mDeadlineMillis = deadlineMillis;
+    mTimerCheckHandler = new Handler(Looper.getMainLooper());
+    mWorkers =
+        new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactory() {
+              private final AtomicInteger mCount = new AtomicInteger();
+
+              @Override
+              public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "protoo-request-" + mCount.incrementAndGet());
+              }
+            });
+    mWorkers.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Limits the number of in-flight requests of {@code method}. A request stays in flight until it
+   * is accepted, rejected or timed out and its {@link Peer.Listener#onRequest} call returned.
+   */
+  public synchronized void setMethodConcurrency(@NonNull String method, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive.");
+    }
+    mMethodLimits.put(method, limit);
+  }
+
+  public void setMetricsListener(MetricsListener metricsListener) {
+    mMetricsListener = metricsListener;
+  }
+
+  /** @return number of server requests not answered yet, running or queued */
+  public synchronized int getOutstandingCount() {
+    return mOutstanding.size();
+  }
+
+  @VisibleForTesting
+  synchronized Task getOutstanding(long requestId) {
+    return mOutstanding.get(requestId);
+  }
+
+  @VisibleForTesting
+  synchronized int getRunningCount(String method) {
+    return getRunning(method);
+  }
+
+  synchronized void execute(
+      @NonNull Message.Request request,
+      @NonNull Peer.Listener listener,
+      @NonNull Peer.ServerRequestHandler serverRequestHandler) {
+    if (mClosed) {
+      return;
+    }
+
+    if (mOutstanding.size() >= mMaxOutstanding) {
+      Logger.w(TAG, "execute() too many outstanding requests, rejecting " + request.getMethod());
+      serverRequestHandler.reject(503, "too many pending requests");
+      return;
+    }
+
+    Task task = new Task(request, listener, serverRequestHandler);
+    mOutstanding.put(request.getId(), task);
+
+    String method = request.getMethod();
+    Integer limit = mMethodLimits.get(method);
+    int running = getRunning(method);
+    if (limit != null && running >= limit) {
+      Queue<Task> queued = mMethodQueued.get(method);
+      if (queued == null) {
+        queued = new ArrayDeque<>();
+        mMethodQueued.put(method, queued);
+      }
+      queued.add(task);
+      return;
+    }
+
+    mMethodRunning.put(method, running + 1);
+    mWorkers.execute(task);
+  }
+
+  synchronized void close() {
+    if (mClosed) {
+      return;
+    }
+
+    mClosed = true;
+    for (Task task : mOutstanding.values()) {
+      task.mDone.set(true);
+      mTimerCheckHandler.removeCallbacks(task.mDeadline);
+    }
+    mOutstanding.clear();
+    mMethodQueued.clear();
+    mMethodRunning.clear();
+    mWorkers.shutdown();
+  }
+
+  // Called by the worker, false if the request was answered before its handler started.
+  private synchronized boolean startRunning(Task task) {
+    if (mClosed || task.mDone.get()) {
+      return false;
+    }
+    task.mRunning = true;
+    return true;
+  }
+
+  private synchronized void stopRunning(Task task) {
+    task.mRunning = false;
+    if (!mClosed && task.mAnswered) {
+      // Answered while running, the slot was kept until now.
+      releaseSlot(task.mRequest.getMethod());
+    }
+  }
+
+  private synchronized void release(Task task) {
+    if (mClosed) {
+      return;
+    }
+
+    mOutstanding.remove(task.mRequest.getId());
+    task.mAnswered = true;
+
+    String method = task.mRequest.getMethod();
+    Queue<Task> queued = mMethodQueued.get(method);
+    if (queued != null && queued.remove(task)) {
+      // Timed out before it got a slot.
+      return;
+    }
+    if (task.mRunning) {
+      // Handler still running, stopRunning() releases the slot.
+      return;
+    }
+    releaseSlot(method);
+  }
+
+  private void releaseSlot(String method) {
+    Queue<Task> queued = mMethodQueued.get(method);
+    if (queued != null) {
+      Task next = queued.poll();
+      if (next != null) {
+        // Hand the slot over to the next queued request.
+        mWorkers.execute(next);
+        return;
+      }
+    }
+
+    int running = getRunning(method) - 1;
+    if (running > 0) {
+      mMethodRunning.put(method, running);
+    } else {
+      mMethodRunning.remove(method);
+    }
+  }
+
+  private int getRunning(String method) {
+    Integer running = mMethodRunning.get(method);
+    return running != null ? running : 0;
+  }
+}
@@ -0,0 +1,20 @@
+package org.protoojs.droid.codec;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Converts a payload object from and to the {@code data} field of a {@link
+ * org.protoojs.droid.Message}. Implementations are normally generated for {@link ProtooPayload}
+ * classes.
+ */
+public interface PayloadCodec<T> {
+
+  @NonNull
+  JSONObject encode(@NonNull T value) throws JSONException;
+
+  @NonNull
+  T decode(@NonNull JSONObject data) throws JSONException;
+}
@@ -0,0 +1,20 @@
+package org.protoojs.droid.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class as a message payload. The {@code protoo-codec-processor} annotation processor
+ * generates a {@link PayloadCodec} named {@code <ClassName>_Codec} for it in the same package,
+ * exposed as an {@code INSTANCE} singleton.
+ *
+ * <p>Every non-static, non-transient field declared by the class is mapped to the JSON key of the
+ * same name, so fields must be neither private nor final and the class needs a non-private no-arg
+ * constructor. Supported field types are primitives and their boxes, {@code String}, {@code
+ * JSONObject}, {@code JSONArray}, other {@code @ProtooPayload} classes and {@code List}s of those.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ProtooPayload {}
@@ -3,6 +3,8 @@ package org.protoojs.droid.transports;
 import org.json.JSONObject;
 import org.protoojs.droid.Message;
 
+import java.util.zip.DataFormatException;
+
 public abstract class AbsWebSocketTransport {
 
   public interface Listener {
@@ -12,6 +14,14 @@ public abstract class AbsWebSocketTransport {
     /** Connection could not be established in the first place. */
     void onFail();
 
+    /**
+     * Parses a received text frame. Transports should call it instead of {@link Message#parse} so
+     * the listener may recycle messages.
+     */
+    default Message parseMessage(String raw) {
+      return Message.parse(raw);
+    }
+
     /** @param message {@link Message} */
     void onMessage(Message message);
 
@@ -23,13 +33,65 @@ public abstract class AbsWebSocketTransport {
 
   // WebSocket URL.
   protected String mUrl;
+  // Payload compressor, set once compression was negotiated for the connection.
+  protected volatile PayloadCompressor mCompressor;
 
   public AbsWebSocketTransport(String url) {
     this.mUrl = url;
   }
 
+  /**
+   * Enables payload compression for the current connection. Call it when the server selected
+   * {@link PayloadCompressor#PROTOCOL}, and with {@code null} when the connection goes away.
+   */
+  public void setPayloadCompressor(PayloadCompressor compressor) {
+    PayloadCompressor old = mCompressor;
+    mCompressor = compressor;
+    // Waits for an in-flight use, later ones on the old instance get null.
+    if (old != null && old != compressor) {
+      old.close();
+    }
+  }
+
+  /**
+   * For use by {@link #sendMessage}.
+   *
+   * @param text encoded message
+   * @return the binary frame to send instead of {@code text}, or {@code null} to send it as text
+   */
+  protected byte[] compressMessage(String text) {
+    PayloadCompressor compressor = mCompressor;
+    if (compressor == null || !compressor.shouldCompress(text)) {
+      return null;
+    }
+    return compressor.compress(text);
+  }
+
+  /**
+   * For use on received binary frames, parses through {@link Listener#parseMessage}.
+   *
+   * @return the parsed {@link Message}, or {@code null} if the frame is invalid
+   */
+  protected Message parseCompressedMessage(Listener listener, byte[] data) {
+    PayloadCompressor compressor = mCompressor;
+    if (compressor == null) {
+      return null;
+    }
+    try {
+      String text = compressor.decompress(data);
+      return text != null ? listener.parseMessage(text) : null;
+    } catch (DataFormatException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
   public abstract void connect(Listener listener);
 
+  /**
+   * Need not be thread-safe: {@link org.protoojs.droid.Peer} never calls it concurrently, though
+   * it may call it from different threads.
+   */
   public abstract String sendMessage(JSONObject message);
 
   public abstract void close();
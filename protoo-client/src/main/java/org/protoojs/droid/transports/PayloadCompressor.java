@@ -0,0 +1,166 @@
+package org.protoojs.droid.transports;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate with a preset dictionary of protoo/mediasoup signaling vocabulary.
+ *
+ * <p>Compression must be negotiated: offer {@link #PROTOCOL} next to {@code protoo} as WebSocket
+ * sub-protocol and install a compressor only if the server selected it. Compressed messages travel
+ * as binary frames, messages below the size threshold stay text frames.
+ *
+ * <p>One instance per connection; the {@link Deflater} and {@link Inflater} are reused for every
+ * message and released by {@link #close()}. Once closed, {@link #compress} and {@link #decompress}
+ * return {@code null}.
+ */
+public class PayloadCompressor {
+
+  public static final String PROTOCOL = "protoo-deflate-v1";
+
+  public static final int DEFAULT_THRESHOLD = 256;
+
+  public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // Preset dictionary. Deflate references nearer strings more cheaply, so the most frequent
+  // fragments come last.
+  private static final byte[] DICTIONARY =
+      ("urn:ietf:params:rtp-hdrext:sdes:rtp-stream-id"
+              + "urn:ietf:params:rtp-hdrext:sdes:repaired-rtp-stream-id"
+              + "http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time"
+              + "http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01"
+              + "urn:ietf:params:rtp-hdrext:framemarking"
+              + "urn:ietf:params:rtp-hdrext:toffset"
+              + "urn:3gpp:video-orientation"
+              + "urn:ietf:params:rtp-hdrext:ssrc-audio-level"
+              + "urn:ietf:params:rtp-hdrext:sdes:mid"
+              + "\"packetization-mode\":1,\"level-asymmetry-allowed\":1,"
+              + "\"profile-level-id\":\"42e01f\""
+              + "\"x-google-start-bitrate\":1000,\"profile-id\":0"
+              + "{\"type\":\"goog-remb\",\"parameter\":\"\"},"
+              + "{\"type\":\"transport-cc\",\"parameter\":\"\"},"
+              + "{\"type\":\"ccm\",\"parameter\":\"fir\"},"
+              + "{\"type\":\"nack\",\"parameter\":\"pli\"},"
+              + "{\"type\":\"nack\",\"parameter\":\"\"},"
+              + "\"mimeType\":\"video/rtx\",\"parameters\":{\"apt\":"
+              + "\"mimeType\":\"video/VP9\",\"mimeType\":\"video/H264\",\"mimeType\":\"video/VP8\","
+              + "\"mimeType\":\"audio/opus\",\"clockRate\":48000,\"channels\":2,"
+              + "\"kind\":\"audio\",\"kind\":\"video\",\"clockRate\":90000,"
+              + "\"preferredPayloadType\":\"rtcpFeedback\":[],\"parameters\":{},"
+              + "\"headerExtensions\":[{\"kind\":\"uri\":\"preferredId\":"
+              + "\"preferredEncrypt\":false,\"direction\":\"sendrecv\"},"
+              + "\"fecMechanisms\":[],\"codecs\":[{\"rtpCapabilities\":{"
+              + "\"sctpCapabilities\":{\"numStreams\":{\"OS\":1024,\"MIS\":1024}},"
+              + "\"sctpParameters\":{\"port\":5000,\"maxMessageSize\":262144},"
+              + "\"iceParameters\":{\"usernameFragment\":\"\",\"password\":\"\",\"iceLite\":true},"
+              + "\"iceCandidates\":[{\"foundation\":\"udpcandidate\",\"priority\":"
+              + "\"ip\":\"\",\"protocol\":\"udp\",\"protocol\":\"tcp\",\"port\":"
+              + "\"type\":\"host\",\"tcpType\":\"passive\"}],"
+              + "\"dtlsParameters\":{\"role\":\"auto\",\"role\":\"client\",\"role\":\"server\","
+              + "\"fingerprints\":[{\"algorithm\":\"sha-256\",\"value\":\""
+              + "\"rtpParameters\":{\"mid\":\"encodings\":[{\"ssrc\":\"rtx\":{\"ssrc\":"
+              + "\"rtcp\":{\"cname\":\"\",\"reducedSize\":true},\"dtx\":false,"
+              + "\"scalabilityMode\":\"S1T3\",\"maxBitrate\":\"scaleResolutionDownBy\":"
+              + "\"transportId\":\"producerId\":\"consumerId\":\"dataProducerId\":"
+              + "\"producerPaused\":false,\"appData\":{},"
+              + "\"type\":\"simple\",\"type\":\"simulcast\","
+              + "\"peerId\":\"displayName\":\"device\":{\"flag\":\"android\",\"name\":\"version\":"
+              + "\"method\":\"createWebRtcTransport\",\"method\":\"connectWebRtcTransport\","
+              + "\"method\":\"getRouterRtpCapabilities\",\"method\":\"join\","
+              + "\"method\":\"produce\",\"method\":\"resumeConsumer\",\"method\":\"newConsumer\","
+              + "\"method\":\"newPeer\",\"method\":\"activeSpeaker\",\"method\":\"consumerScore\","
+              + "\"notification\":true,\"method\":\"data\":{"
+              + "{\"response\":true,\"id\":\"ok\":true,\"data\":{"
+              + "{\"request\":true,\"method\":\"id\":\"data\":{")
+          .getBytes(UTF_8);
+
+  private final int mThreshold;
+  private final int mMaxMessageSize;
+  private final Deflater mDeflater;
+  private final Inflater mInflater;
+  private final byte[] mBuffer = new byte[4096];
+  private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream(4096);
+  private boolean mClosed;
+
+  public PayloadCompressor() {
+    this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION, DEFAULT_MAX_MESSAGE_SIZE);
+  }
+
+  /**
+   * @param threshold messages shorter than this many chars are not compressed
+   * @param level {@link Deflater} compression level
+   * @param maxMessageSize max size in bytes of a decompressed message
+   */
+  public PayloadCompressor(int threshold, int level, int maxMessageSize) {
+    mThreshold = threshold;
+    mMaxMessageSize = maxMessageSize;
+    mDeflater = new Deflater(level, true);
+    mInflater = new Inflater(true);
+  }
+
+  public boolean shouldCompress(String text) {
+    return text.length() >= mThreshold;
+  }
+
+  /** @return the compressed message, or {@code null} if closed */
+  public synchronized byte[] compress(String text) {
+    if (mClosed) {
+      return null;
+    }
+
+    mDeflater.reset();
+    mDeflater.setDictionary(DICTIONARY);
+    mDeflater.setInput(text.getBytes(UTF_8));
+    mDeflater.finish();
+
+    mOutput.reset();
+    while (!mDeflater.finished()) {
+      int count = mDeflater.deflate(mBuffer);
+      mOutput.write(mBuffer, 0, count);
+    }
+    return mOutput.toByteArray();
+  }
+
+  /**
+   * @return the decompressed message, or {@code null} if closed
+   * @throws DataFormatException if {@code data} is corrupt or inflates beyond the max size
+   */
+  public synchronized String decompress(byte[] data) throws DataFormatException {
+    if (mClosed) {
+      return null;
+    }
+
+    mInflater.reset();
+    mInflater.setDictionary(DICTIONARY);
+    mInflater.setInput(data);
+
+    mOutput.reset();
+    while (!mInflater.finished()) {
+      int count = mInflater.inflate(mBuffer);
+      if (count == 0 && (mInflater.needsInput() || mInflater.needsDictionary())) {
+        throw new DataFormatException("truncated compressed message");
+      }
+      if (mOutput.size() + count > mMaxMessageSize) {
+        throw new DataFormatException("decompressed message exceeds " + mMaxMessageSize + " bytes");
+      }
+      mOutput.write(mBuffer, 0, count);
+    }
+    return new String(mOutput.toByteArray(), UTF_8);
+  }
+
+  /** Releases the native deflate/inflate state. */
+  public synchronized void close() {
+    if (mClosed) {
+      return;
+    }
+
+    mClosed = true;
+    mDeflater.end();
+    mInflater.end();
+  }
+}
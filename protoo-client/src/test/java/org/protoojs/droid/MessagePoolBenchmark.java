@@ -0,0 +1,109 @@
+package org.protoojs.droid;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.protoojs.droid.transports.AbsWebSocketTransport;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/** Bytes allocated per received notification through Peer, with and without a MessagePool. */
+public class MessagePoolBenchmark {
+
+  private static final int WARMUP_FRAMES = 20000;
+  private static final int FRAMES = 50000;
+
+  private static final String NOTIFICATION =
+      "{\"notification\":true,\"method\":\"activeSpeaker\",\"data\":{\"peerId\":\"x7mrk2qa\","
+          + "\"volume\":-42}}";
+
+  private static class NullTransport extends AbsWebSocketTransport {
+
+    NullTransport() {
+      super("wss://example.org");
+    }
+
+    @Override
+    public void connect(Listener listener) {}
+
+    @Override
+    public String sendMessage(JSONObject message) {
+      return message.toString();
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+  }
+
+  private static class CountingListener implements Peer.Listener {
+
+    int mCount;
+
+    @Override
+    public void onNotification(@NonNull Message.Notification notification) {
+      if (notification.getMethod() != null) {
+        mCount++;
+      }
+    }
+
+    @Override
+    public void onOpen() {}
+
+    @Override
+    public void onFail() {}
+
+    @Override
+    public void onRequest(
+        @NonNull Message.Request request, @NonNull Peer.ServerRequestHandler handler) {}
+
+    @Override
+    public void onDisconnected() {}
+
+    @Override
+    public void onClose() {}
+  }
+
+  @Test
+  public void notificationFlood() {
+    long unpooled = measure(null);
+    long pooled = measure(new MessagePool());
+
+    System.out.println(
+        String.format(
+            "bytes/frame unpooled %.1f, pooled %.1f, saved %.1f (%.1f%%)",
+            unpooled / (double) FRAMES,
+            pooled / (double) FRAMES,
+            (unpooled - pooled) / (double) FRAMES,
+            100.0 * (unpooled - pooled) / unpooled));
+    assertTrue(pooled < unpooled);
+  }
+
+  private static long measure(MessagePool pool) {
+    CountingListener listener = new CountingListener();
+    Peer peer = new Peer(new NullTransport(), listener);
+    peer.setMessagePool(pool);
+
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      peer.onMessage(peer.parseMessage(NOTIFICATION));
+    }
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long start = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < FRAMES; i++) {
+      peer.onMessage(peer.parseMessage(NOTIFICATION));
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - start;
+
+    assertTrue(listener.mCount == WARMUP_FRAMES + FRAMES);
+    return allocated;
+  }
+}
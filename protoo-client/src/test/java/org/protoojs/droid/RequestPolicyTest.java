@@ -0,0 +1,39 @@
+package org.protoojs.droid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestPolicyTest {
+
+  @Test
+  public void hedgeDelay() {
+    RequestPolicy policy = new RequestPolicy(1, 0.9, 500);
+    // not enough samples yet.
+    policy.recordLatency(10);
+    assertEquals(500, policy.getHedgeDelayMillis());
+
+    for (int i = 2; i <= 10; i++) {
+      policy.recordLatency(i * 10);
+    }
+    assertEquals(90, policy.getHedgeDelayMillis());
+    assertTrue(policy.isHedging());
+    assertFalse(new RequestPolicy(1, 0, 500).isHedging());
+  }
+
+  @Test
+  public void retryBudget() {
+    RetryBudget budget = new RetryBudget(0.5, 2);
+    assertTrue(budget.withdraw());
+    assertTrue(budget.withdraw());
+    assertFalse(budget.withdraw());
+
+    // two regular requests earn one re-send.
+    budget.deposit();
+    assertFalse(budget.withdraw());
+    budget.deposit();
+    assertTrue(budget.withdraw());
+  }
+}
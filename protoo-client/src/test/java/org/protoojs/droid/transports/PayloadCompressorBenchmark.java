@@ -0,0 +1,168 @@
+package org.protoojs.droid.transports;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Bytes saved against CPU cost of {@link PayloadCompressor} on typical mediasoup signaling. */
+public class PayloadCompressorBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 2000;
+  private static final int ITERATIONS = 5000;
+
+  private static final String ROUTER_RTP_CAPABILITIES =
+      "{\"response\":true,\"id\":4813902,\"ok\":true,\"data\":{\"codecs\":[{\"kind\":\"audio\","
+          + "\"mimeType\":\"audio/opus\",\"clockRate\":48000,\"channels\":2,"
+          + "\"rtcpFeedback\":[{\"type\":\"transport-cc\",\"parameter\":\"\"}],"
+          + "\"parameters\":{},\"preferredPayloadType\":100},{\"kind\":\"video\","
+          + "\"mimeType\":\"video/VP8\",\"clockRate\":90000,\"rtcpFeedback\":[{\"type\":\"nack\","
+          + "\"parameter\":\"\"},{\"type\":\"nack\",\"parameter\":\"pli\"},{\"type\":\"ccm\","
+          + "\"parameter\":\"fir\"},{\"type\":\"goog-remb\",\"parameter\":\"\"},"
+          + "{\"type\":\"transport-cc\",\"parameter\":\"\"}],\"parameters\":"
+          + "{\"x-google-start-bitrate\":1000},\"preferredPayloadType\":101},{\"kind\":\"video\","
+          + "\"mimeType\":\"video/rtx\",\"preferredPayloadType\":102,\"clockRate\":90000,"
+          + "\"parameters\":{\"apt\":101},\"rtcpFeedback\":[]},{\"kind\":\"video\","
+          + "\"mimeType\":\"video/H264\",\"clockRate\":90000,\"parameters\":"
+          + "{\"packetization-mode\":1,\"level-asymmetry-allowed\":1,"
+          + "\"profile-level-id\":\"42e01f\",\"x-google-start-bitrate\":1000},"
+          + "\"rtcpFeedback\":[{\"type\":\"nack\",\"parameter\":\"\"},{\"type\":\"nack\","
+          + "\"parameter\":\"pli\"},{\"type\":\"ccm\",\"parameter\":\"fir\"},"
+          + "{\"type\":\"goog-remb\",\"parameter\":\"\"},{\"type\":\"transport-cc\","
+          + "\"parameter\":\"\"}],\"preferredPayloadType\":105}],\"headerExtensions\":["
+          + "{\"kind\":\"audio\",\"uri\":\"urn:ietf:params:rtp-hdrext:sdes:mid\","
+          + "\"preferredId\":1,\"preferredEncrypt\":false,\"direction\":\"sendrecv\"},"
+          + "{\"kind\":\"video\",\"uri\":\"urn:ietf:params:rtp-hdrext:sdes:mid\","
+          + "\"preferredId\":1,\"preferredEncrypt\":false,\"direction\":\"sendrecv\"},"
+          + "{\"kind\":\"video\",\"uri\":\"http://www.webrtc.org/experiments/rtp-hdrext/"
+          + "abs-send-time\",\"preferredId\":4,\"preferredEncrypt\":false,"
+          + "\"direction\":\"sendrecv\"},{\"kind\":\"video\",\"uri\":\"http://www.ietf.org/id/"
+          + "draft-holmer-rmcat-transport-wide-cc-extensions-01\",\"preferredId\":5,"
+          + "\"preferredEncrypt\":false,\"direction\":\"sendrecv\"},{\"kind\":\"audio\","
+          + "\"uri\":\"urn:ietf:params:rtp-hdrext:ssrc-audio-level\",\"preferredId\":10,"
+          + "\"preferredEncrypt\":false,\"direction\":\"sendrecv\"},{\"kind\":\"video\","
+          + "\"uri\":\"urn:3gpp:video-orientation\",\"preferredId\":11,"
+          + "\"preferredEncrypt\":false,\"direction\":\"sendrecv\"}]}}";
+
+  private static final String CREATE_WEBRTC_TRANSPORT =
+      "{\"response\":true,\"id\":7720145,\"ok\":true,\"data\":{"
+          + "\"id\":\"5b1d2c4e-8a57-4e0c-9b3f-2f3c2a9e7d11\",\"iceParameters\":{"
+          + "\"usernameFragment\":\"h3kq0b7tx2wzs9aa\",\"password\":\"p8mxv4l2c1tj6ynw0d7sgr5u\","
+          + "\"iceLite\":true},\"iceCandidates\":[{\"foundation\":\"udpcandidate\","
+          + "\"priority\":1076302079,\"ip\":\"203.0.113.17\",\"protocol\":\"udp\","
+          + "\"port\":44612,\"type\":\"host\"},{\"foundation\":\"tcpcandidate\","
+          + "\"priority\":1076276479,\"ip\":\"203.0.113.17\",\"protocol\":\"tcp\","
+          + "\"port\":44870,\"type\":\"host\",\"tcpType\":\"passive\"}],\"dtlsParameters\":{"
+          + "\"fingerprints\":[{\"algorithm\":\"sha-256\",\"value\":\"6C:93:1E:0B:4A:2F:D8:75:"
+          + "19:C4:0E:A3:5B:71:9F:E2:38:46:DA:0C:B7:12:6F:85:E9:3D:A0:C1:54:78:2B:9E\"}],"
+          + "\"role\":\"auto\"},\"sctpParameters\":{\"port\":5000,\"OS\":1024,\"MIS\":1024,"
+          + "\"maxMessageSize\":262144}}}";
+
+  private static final String PRODUCE =
+      "{\"request\":true,\"method\":\"produce\",\"id\":3390471,\"data\":{"
+          + "\"transportId\":\"5b1d2c4e-8a57-4e0c-9b3f-2f3c2a9e7d11\",\"kind\":\"video\","
+          + "\"rtpParameters\":{\"mid\":\"0\",\"codecs\":[{\"mimeType\":\"video/VP8\","
+          + "\"payloadType\":96,\"clockRate\":90000,\"parameters\":{},\"rtcpFeedback\":["
+          + "{\"type\":\"goog-remb\",\"parameter\":\"\"},{\"type\":\"transport-cc\","
+          + "\"parameter\":\"\"},{\"type\":\"ccm\",\"parameter\":\"fir\"},{\"type\":\"nack\","
+          + "\"parameter\":\"\"},{\"type\":\"nack\",\"parameter\":\"pli\"}]},"
+          + "{\"mimeType\":\"video/rtx\",\"payloadType\":97,\"clockRate\":90000,"
+          + "\"parameters\":{\"apt\":96},\"rtcpFeedback\":[]}],\"headerExtensions\":["
+          + "{\"uri\":\"urn:ietf:params:rtp-hdrext:sdes:mid\",\"id\":4,\"encrypt\":false,"
+          + "\"parameters\":{}},{\"uri\":\"http://www.webrtc.org/experiments/rtp-hdrext/"
+          + "abs-send-time\",\"id\":2,\"encrypt\":false,\"parameters\":{}},{\"uri\":"
+          + "\"http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\","
+          + "\"id\":3,\"encrypt\":false,\"parameters\":{}},{\"uri\":"
+          + "\"urn:3gpp:video-orientation\",\"id\":13,\"encrypt\":false,\"parameters\":{}}],"
+          + "\"encodings\":[{\"active\":true,\"ssrc\":2871633451,\"rtx\":{\"ssrc\":1502374458},"
+          + "\"maxBitrate\":500000,\"scaleResolutionDownBy\":4,\"dtx\":false},"
+          + "{\"active\":true,\"ssrc\":2871633452,\"rtx\":{\"ssrc\":1502374459},"
+          + "\"maxBitrate\":1000000,\"scaleResolutionDownBy\":2,\"dtx\":false},"
+          + "{\"active\":true,\"ssrc\":2871633453,\"rtx\":{\"ssrc\":1502374460},"
+          + "\"maxBitrate\":5000000,\"scaleResolutionDownBy\":1,\"dtx\":false}],"
+          + "\"rtcp\":{\"cname\":\"Fq7kRz2dWm0vXb9T\",\"reducedSize\":true}},"
+          + "\"appData\":{\"source\":\"webcam\"}}}";
+
+  private static final String NEW_CONSUMER =
+      "{\"request\":true,\"method\":\"newConsumer\",\"id\":9051277,\"data\":{"
+          + "\"peerId\":\"x7mrk2qa\",\"producerId\":\"c0e4f1d2-9b3a-4c55-8e7f-61a2b3c4d5e6\","
+          + "\"id\":\"f3a9b8c7-1d2e-4f50-a6b7-c8d9e0f1a2b3\",\"kind\":\"audio\","
+          + "\"rtpParameters\":{\"codecs\":[{\"mimeType\":\"audio/opus\",\"payloadType\":100,"
+          + "\"clockRate\":48000,\"channels\":2,\"parameters\":{\"minptime\":10,"
+          + "\"useinbandfec\":1},\"rtcpFeedback\":[{\"type\":\"transport-cc\","
+          + "\"parameter\":\"\"}]}],\"headerExtensions\":[{\"uri\":"
+          + "\"urn:ietf:params:rtp-hdrext:sdes:mid\",\"id\":1,\"encrypt\":false,"
+          + "\"parameters\":{}},{\"uri\":\"http://www.ietf.org/id/"
+          + "draft-holmer-rmcat-transport-wide-cc-extensions-01\",\"id\":5,\"encrypt\":false,"
+          + "\"parameters\":{}},{\"uri\":\"urn:ietf:params:rtp-hdrext:ssrc-audio-level\","
+          + "\"id\":10,\"encrypt\":false,\"parameters\":{}}],\"encodings\":[{\"ssrc\":"
+          + "385627105}],\"rtcp\":{\"cname\":\"Fq7kRz2dWm0vXb9T\",\"reducedSize\":true,"
+          + "\"mux\":true},\"mid\":\"2\"},\"type\":\"simple\",\"appData\":{},"
+          + "\"producerPaused\":false}}";
+
+  @Test
+  public void benchmark() {
+    String[] names = {
+      "getRouterRtpCapabilities", "createWebRtcTransport", "produce", "newConsumer"
+    };
+    String[] payloads = {ROUTER_RTP_CAPABILITIES, CREATE_WEBRTC_TRANSPORT, PRODUCE, NEW_CONSUMER};
+
+    PayloadCompressor compressor = new PayloadCompressor();
+    Deflater plain = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      System.out.println(
+          String.format(
+              "%-26s %6s %8s %8s %9s %9s",
+              "payload", "raw", "deflate", "dict", "comp(us)", "decomp(us)"));
+      for (int i = 0; i < payloads.length; i++) {
+        String payload = payloads[i];
+        byte[] compressed = compressor.compress(payload);
+        assertEquals(payload, compressor.decompress(compressed));
+
+        int rawSize = payload.getBytes(Charset.forName("UTF-8")).length;
+        int plainSize = deflate(plain, payload);
+        assertTrue(compressed.length < plainSize);
+        assertTrue(compressed.length < rawSize);
+
+        for (int j = 0; j < WARMUP_ITERATIONS; j++) {
+          compressor.decompress(compressor.compress(payload));
+        }
+        long start = System.nanoTime();
+        for (int j = 0; j < ITERATIONS; j++) {
+          compressor.compress(payload);
+        }
+        double compressMicros = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+        start = System.nanoTime();
+        for (int j = 0; j < ITERATIONS; j++) {
+          compressor.decompress(compressed);
+        }
+        double decompressMicros = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+
+        System.out.println(
+            String.format(
+                "%-26s %6d %8d %8d %9.1f %9.1f",
+                names[i], rawSize, plainSize, compressed.length, compressMicros, decompressMicros));
+      }
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    } finally {
+      plain.end();
+      compressor.close();
+    }
+  }
+
+  private static int deflate(Deflater deflater, String text) {
+    deflater.reset();
+    deflater.setInput(text.getBytes(Charset.forName("UTF-8")));
+    deflater.finish();
+    byte[] buffer = new byte[8192];
+    int size = 0;
+    while (!deflater.finished()) {
+      size += deflater.deflate(buffer);
+    }
+    return size;
+  }
+}
@@ -0,0 +1,88 @@
+package org.protoojs.droid.transports;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadCompressorTest {
+
+  private static final String MESSAGE =
+      "{\"request\":true,\"method\":\"produce\",\"id\":3390471,\"data\":{\"kind\":\"audio\","
+          + "\"rtpParameters\":{\"codecs\":[{\"mimeType\":\"audio/opus\",\"clockRate\":48000,"
+          + "\"channels\":2,\"rtcpFeedback\":[{\"type\":\"transport-cc\",\"parameter\":\"\"}]}]}}}";
+
+  @Test
+  public void threshold() {
+    PayloadCompressor compressor = new PayloadCompressor(100, Deflater.DEFAULT_COMPRESSION, 1024);
+    assertFalse(compressor.shouldCompress("{\"notification\":true}"));
+    assertTrue(compressor.shouldCompress(MESSAGE));
+    compressor.close();
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    PayloadCompressor compressor = new PayloadCompressor();
+    // instances are reused across messages.
+    for (int i = 0; i < 3; i++) {
+      byte[] compressed = compressor.compress(MESSAGE);
+      assertTrue(compressed.length < MESSAGE.length());
+      assertEquals(MESSAGE, compressor.decompress(compressed));
+    }
+    compressor.close();
+  }
+
+  @Test
+  public void corruptInput() throws Exception {
+    PayloadCompressor compressor = new PayloadCompressor();
+    byte[] compressed = compressor.compress(MESSAGE);
+
+    try {
+      compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+      fail("truncated input not detected");
+    } catch (DataFormatException e) {
+      // expected.
+    }
+    try {
+      compressor.decompress(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+      fail("corrupt input not detected");
+    } catch (DataFormatException e) {
+      // expected.
+    }
+
+    // still usable afterwards.
+    assertEquals(MESSAGE, compressor.decompress(compressed));
+    compressor.close();
+  }
+
+  @Test
+  public void maxMessageSize() throws Exception {
+    PayloadCompressor compressor =
+        new PayloadCompressor(0, Deflater.DEFAULT_COMPRESSION, MESSAGE.length() - 1);
+    try {
+      compressor.decompress(compressor.compress(MESSAGE));
+      fail("oversized message not detected");
+    } catch (DataFormatException e) {
+      // expected.
+    }
+    compressor.close();
+  }
+
+  @Test
+  public void closed() throws Exception {
+    PayloadCompressor compressor = new PayloadCompressor();
+    byte[] compressed = compressor.compress(MESSAGE);
+    compressor.close();
+    compressor.close();
+
+    assertNull(compressor.compress(MESSAGE));
+    assertNull(compressor.decompress(compressed));
+  }
+}
@@ -0,0 +1,387 @@
+package org.protoojs.droid.codec.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a reflection-free {@code PayloadCodec} for every class annotated with {@code
+ * org.protoojs.droid.codec.ProtooPayload}.
+ */
+public class PayloadCodecProcessor extends AbstractProcessor {
+
+  private static final String ANNOTATION = "org.protoojs.droid.codec.ProtooPayload";
+  private static final String CODEC = "org.protoojs.droid.codec.PayloadCodec";
+  private static final String JSON_OBJECT = "org.json.JSONObject";
+  private static final String JSON_ARRAY = "org.json.JSONArray";
+  private static final String JSON_EXCEPTION = "org.json.JSONException";
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(ANNOTATION);
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() != ElementKind.CLASS) {
+          error(element, "@ProtooPayload can only be applied to classes.");
+          continue;
+        }
+        TypeElement type = (TypeElement) element;
+        try {
+          generate(type);
+        } catch (IllegalArgumentException e) {
+          error(type, e.getMessage());
+        } catch (IOException e) {
+          error(type, "Failed to write codec: " + e.getMessage());
+        }
+      }
+    }
+    return true;
+  }
+
+  private void generate(TypeElement type) throws IOException {
+    if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+      throw new IllegalArgumentException("@ProtooPayload class must not be abstract.");
+    }
+    if (type.getModifiers().contains(Modifier.PRIVATE)) {
+      throw new IllegalArgumentException("@ProtooPayload class must not be private.");
+    }
+    if (type.getNestingKind() == NestingKind.MEMBER
+        && !type.getModifiers().contains(Modifier.STATIC)) {
+      throw new IllegalArgumentException("Nested @ProtooPayload class must be static.");
+    }
+    if (!hasNoArgConstructor(type)) {
+      throw new IllegalArgumentException(
+          "@ProtooPayload class needs a non-private no-arg constructor.");
+    }
+
+    List<VariableElement> fields = new ArrayList<>();
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+        continue;
+      }
+      if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+        throw new IllegalArgumentException(
+            "Field " + field.getSimpleName() + " must be neither private nor final.");
+      }
+      fields.add(field);
+    }
+
+    String packageName = getPackageName(type);
+    String codecName = getCodecSimpleName(type);
+    String typeName = type.getQualifiedName().toString();
+
+    StringBuilder out = new StringBuilder();
+    if (!packageName.isEmpty()) {
+      out.append("package ").append(packageName).append(";\n\n");
+    }
+    out.append("/** Generated by PayloadCodecProcessor. Do not edit. */\n");
+    out.append("public final class ")
+        .append(codecName)
+        .append(" implements ")
+        .append(CODEC)
+        .append('<')
+        .append(typeName)
+        .append("> {\n\n");
+    out.append("  public static final ")
+        .append(codecName)
+        .append(" INSTANCE = new ")
+        .append(codecName)
+        .append("();\n\n");
+    out.append("  private ").append(codecName).append("() {}\n\n");
+
+    // encode.
+    out.append("  @Override\n");
+    out.append("  public ")
+        .append(JSON_OBJECT)
+        .append(" encode(")
+        .append(typeName)
+        .append(" value) throws ")
+        .append(JSON_EXCEPTION)
+        .append(" {\n");
+    out.append("    ")
+        .append(JSON_OBJECT)
+        .append(" data = new ")
+        .append(JSON_OBJECT)
+        .append("();\n");
+    for (VariableElement field : fields) {
+      appendEncodeField(out, field);
+    }
+    out.append("    return data;\n");
+    out.append("  }\n\n");
+
+    // decode.
+    out.append("  @Override\n");
+    out.append("  public ")
+        .append(typeName)
+        .append(" decode(")
+        .append(JSON_OBJECT)
+        .append(" data) throws ")
+        .append(JSON_EXCEPTION)
+        .append(" {\n");
+    out.append("    ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+    for (VariableElement field : fields) {
+      appendDecodeField(out, field);
+    }
+    out.append("    return value;\n");
+    out.append("  }\n");
+    out.append("}\n");
+
+    String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+    try (Writer writer =
+        processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+      writer.write(out.toString());
+    }
+  }
+
+  private void appendEncodeField(StringBuilder out, VariableElement field) {
+    String name = field.getSimpleName().toString();
+    TypeMirror type = field.asType();
+    String key = '"' + name + '"';
+
+    if (type.getKind().isPrimitive()) {
+      String value = type.getKind() == TypeKind.FLOAT ? "(double) value." + name : "value." + name;
+      out.append("    data.put(").append(key).append(", ").append(value).append(");\n");
+      return;
+    }
+
+    out.append("    if (value.").append(name).append(" != null) {\n");
+    if (isList(type)) {
+      TypeMirror elementType = getListElementType(field, type);
+      out.append("      ")
+          .append(JSON_ARRAY)
+          .append(" array = new ")
+          .append(JSON_ARRAY)
+          .append("();\n");
+      out.append("      for (")
+          .append(elementType)
+          .append(" element : value.")
+          .append(name)
+          .append(") {\n");
+      out.append("        array.put(element != null ? ")
+          .append(encodeValue(field, elementType, "element"))
+          .append(" : ")
+          .append(JSON_OBJECT)
+          .append(".NULL);\n");
+      out.append("      }\n");
+      out.append("      data.put(").append(key).append(", array);\n");
+    } else {
+      out.append("      data.put(")
+          .append(key)
+          .append(", ")
+          .append(encodeValue(field, type, "value." + name))
+          .append(");\n");
+    }
+    out.append("    }\n");
+  }
+
+  private void appendDecodeField(StringBuilder out, VariableElement field) {
+    String name = field.getSimpleName().toString();
+    TypeMirror type = field.asType();
+    String key = '"' + name + '"';
+
+    switch (type.getKind()) {
+      case BOOLEAN:
+        appendOpt(out, name, "data.optBoolean(" + key + ", value." + name + ")");
+        return;
+      case INT:
+        appendOpt(out, name, "data.optInt(" + key + ", value." + name + ")");
+        return;
+      case LONG:
+        appendOpt(out, name, "data.optLong(" + key + ", value." + name + ")");
+        return;
+      case DOUBLE:
+        appendOpt(out, name, "data.optDouble(" + key + ", value." + name + ")");
+        return;
+      case FLOAT:
+        appendOpt(out, name, "(float) data.optDouble(" + key + ", value." + name + ")");
+        return;
+      default:
+        if (type.getKind().isPrimitive()) {
+          throw new IllegalArgumentException("Unsupported type of field " + name + ": " + type);
+        }
+    }
+
+    // Absent or null keys leave the field at its default value.
+    out.append("    if (!data.isNull(").append(key).append(")) {\n");
+    if (isList(type)) {
+      TypeMirror elementType = getListElementType(field, type);
+      out.append("      ")
+          .append(JSON_ARRAY)
+          .append(" array = data.getJSONArray(")
+          .append(key)
+          .append(");\n");
+      out.append("      java.util.List<")
+          .append(elementType)
+          .append("> list = new java.util.ArrayList<>(array.length());\n");
+      out.append("      for (int i = 0; i < array.length(); i++) {\n");
+      out.append("        list.add(array.isNull(i) ? null : ")
+          .append(decodeValue(field, elementType, "array", "i"))
+          .append(");\n");
+      out.append("      }\n");
+      out.append("      value.").append(name).append(" = list;\n");
+    } else {
+      out.append("      value.")
+          .append(name)
+          .append(" = ")
+          .append(decodeValue(field, type, "data", key))
+          .append(";\n");
+    }
+    out.append("    }\n");
+  }
+
+  private static void appendOpt(StringBuilder out, String name, String expression) {
+    out.append("    value.").append(name).append(" = ").append(expression).append(";\n");
+  }
+
+  private String encodeValue(VariableElement field, TypeMirror type, String expression) {
+    String typeName = type.toString();
+    if (isPayload(type)) {
+      return getCodecName(type) + ".INSTANCE.encode(" + expression + ")";
+    }
+    if (typeName.equals("java.lang.Float")) {
+      return "(double) " + expression;
+    }
+    switch (typeName) {
+      case "java.lang.Boolean":
+      case "java.lang.Integer":
+      case "java.lang.Long":
+      case "java.lang.Double":
+      case "java.lang.String":
+      case JSON_OBJECT:
+      case JSON_ARRAY:
+        return expression;
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported type of field " + field.getSimpleName() + ": " + typeName);
+    }
+  }
+
+  private String decodeValue(VariableElement field, TypeMirror type, String source, String key) {
+    String typeName = type.toString();
+    if (isPayload(type)) {
+      return getCodecName(type)
+          + ".INSTANCE.decode("
+          + source
+          + ".getJSONObject("
+          + key
+          + "))";
+    }
+    switch (typeName) {
+      case "java.lang.Boolean":
+        return source + ".getBoolean(" + key + ")";
+      case "java.lang.Integer":
+        return source + ".getInt(" + key + ")";
+      case "java.lang.Long":
+        return source + ".getLong(" + key + ")";
+      case "java.lang.Double":
+        return source + ".getDouble(" + key + ")";
+      case "java.lang.Float":
+        return "(float) " + source + ".getDouble(" + key + ")";
+      case "java.lang.String":
+        return source + ".getString(" + key + ")";
+      case JSON_OBJECT:
+        return source + ".getJSONObject(" + key + ")";
+      case JSON_ARRAY:
+        return source + ".getJSONArray(" + key + ")";
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported type of field " + field.getSimpleName() + ": " + typeName);
+    }
+  }
+
+  private boolean isList(TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED
+        && ((TypeElement) ((DeclaredType) type).asElement())
+            .getQualifiedName()
+            .contentEquals("java.util.List");
+  }
+
+  private TypeMirror getListElementType(VariableElement field, TypeMirror type) {
+    List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+    if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+      throw new IllegalArgumentException(
+          "Field " + field.getSimpleName() + " must be a List with a concrete element type.");
+    }
+    return arguments.get(0);
+  }
+
+  private boolean isPayload(TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    Element element = ((DeclaredType) type).asElement();
+    return element.getAnnotationMirrors().stream()
+        .anyMatch(
+            mirror ->
+                ((TypeElement) mirror.getAnnotationType().asElement())
+                    .getQualifiedName()
+                    .contentEquals(ANNOTATION));
+  }
+
+  private String getCodecName(TypeMirror type) {
+    TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+    String packageName = getPackageName(element);
+    String codecName = getCodecSimpleName(element);
+    return packageName.isEmpty() ? codecName : packageName + "." + codecName;
+  }
+
+  private String getPackageName(TypeElement type) {
+    PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+    return packageElement.getQualifiedName().toString();
+  }
+
+  /** Outer.Inner is generated as Outer_Inner_Codec. */
+  private static String getCodecSimpleName(TypeElement type) {
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    Element enclosing = type.getEnclosingElement();
+    while (enclosing instanceof TypeElement) {
+      name.insert(0, enclosing.getSimpleName() + "_");
+      enclosing = enclosing.getEnclosingElement();
+    }
+    return name.append("_Codec").toString();
+  }
+
+  private static boolean hasNoArgConstructor(TypeElement type) {
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}